@@ -0,0 +1,714 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.state.StateEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.stream.window.FindableProcessor;
+import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
+import org.wso2.siddhi.core.table.Table;
+import org.wso2.siddhi.core.util.Scheduler;
+import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
+import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import org.wso2.siddhi.core.util.collection.operator.Operator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.core.util.parser.OperatorParser;
+import org.wso2.siddhi.query.api.definition.WindowDefinition;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.siddhi.query.api.expression.Expression;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Base of the unique batch (tumbling) windows. It holds the unique events of the current batch keyed by the
+ * unique key, and flushes them as a batch preceded by the events of the previous batch as expired events and a
+ * reset event. The windows only decide when a batch is flushed, by the number of unique events through
+ * {@link #isBatchFull(int)}, by processing time through {@link #onChunk(long)}, or both.
+ * <p>
+ * The batches are double buffered. A flushed batch is only detached from the window while holding its lock, so
+ * that new events are accepted into the next batch while the flushed one is stamped, copied and emitted. The
+ * detached batches are emitted in order by whichever thread holds the emit lock, and batches of at least
+ * {@link #parallelFlushThreshold} events are prepared in parallel.
+ * <p>
+ * Windows that only flush on processing time can further accept events without the window lock, see
+ * {@link #hasConcurrentIntake()}. Other windows can put a ring buffer in front of the window, see
+ * {@link #initRingBufferIntake(ConfigReader)}.
+ */
+public abstract class AbstractUniqueBatchWindowProcessor extends WindowProcessor implements FindableProcessor {
+
+    static final int DEFAULT_PARALLEL_FLUSH_THRESHOLD = 100000;
+
+    /**
+     * What to do with the events of an arrived chunk.
+     */
+    protected enum ChunkAction {
+        /**
+         * Add the events to the current batch.
+         */
+        ADD,
+        /**
+         * Add the events to the current batch and flush it, unless it has been flushed as it became full.
+         */
+        ADD_THEN_FLUSH,
+        /**
+         * Drop the events.
+         */
+        DISCARD
+    }
+
+    protected ExpressionExecutor uniqueKeyExpressionExecutor;
+    private KeyExtractor uniqueKeyExtractor;
+    protected long timeInMilliSeconds;
+    protected boolean isStartTimeEnabled = false;
+    protected long startTime = 0;
+    protected int parallelFlushThreshold = DEFAULT_PARALLEL_FLUSH_THRESHOLD;
+    private volatile long nextEmitTime = -1;
+    private Scheduler scheduler;
+    private SharedExpiryService.Registration sharedExpiry;
+    private final Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
+    private final ArrayDeque<FlushedBatch> flushedBatches = new ArrayDeque<>();
+    private final ReentrantLock emitLock = new ReentrantLock();
+    private volatile Epoch activeEpoch = new Epoch();
+    private RingBufferIntake ringBufferIntake;
+    private StreamEvent[] eventsToBeExpired = new StreamEvent[0];
+    /**
+     * Whether flushed batches are copied as expired events, see {@link #planState(boolean)}.
+     */
+    private volatile boolean keepsFlushedBatch = true;
+    private final Collection<StreamEvent> eventsToBeExpiredView = new AbstractCollection<StreamEvent>() {
+        @Override
+        public Iterator<StreamEvent> iterator() {
+            return Arrays.asList(eventsToBeExpired).iterator();
+        }
+
+        @Override
+        public int size() {
+            return eventsToBeExpired.length;
+        }
+    };
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner) {
+        if (hasConcurrentIntake()) {
+            processConcurrently(streamEventChunk, nextProcessor);
+            return;
+        }
+        if (ringBufferIntake != null) {
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                // the pooled cloner is not thread safe
+                ringBufferIntake.publish(ParallelBatchBuilder.copy(streamEvent, streamEvent.getType()));
+            }
+            return;
+        }
+        processSynchronously(streamEventChunk, nextProcessor, streamEventCloner);
+    }
+
+    private void processSynchronously(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                                      StreamEventCloner streamEventCloner) {
+        boolean batchFlushed;
+        synchronized (this) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            ChunkAction chunkAction = onChunk(currentTime);
+            boolean flushDue = chunkAction == ChunkAction.ADD_THEN_FLUSH;
+            if (chunkAction != ChunkAction.DISCARD) {
+                while (streamEventChunk.hasNext()) {
+                    StreamEvent streamEvent = streamEventChunk.next();
+                    if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                        continue;
+                    }
+                    StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
+                    addUniqueEvent(uniqueEventMap, uniqueKey(clonedStreamEvent), clonedStreamEvent);
+                    if (isBatchFull(uniqueEventMap.size())) {
+                        flush(currentTime);
+                        flushDue = false;
+                        if (!onBatchFull()) {
+                            break;
+                        }
+                    }
+                }
+            }
+            if (flushDue) {
+                flush(currentTime);
+            }
+            batchFlushed = !flushedBatches.isEmpty();
+        }
+        if (batchFlushed) {
+            emitFlushedBatches(nextProcessor);
+        }
+    }
+
+    /**
+     * Adds the events to the active epoch without the window lock, and only takes the lock when the batch time
+     * has elapsed, to seal the epoch and detach it as the flushed batch.
+     */
+    private void processConcurrently(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor) {
+        long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+        addToActiveEpoch(streamEventChunk);
+        if (nextEmitTime != -1 && currentTime < nextEmitTime) {
+            return;
+        }
+        boolean batchFlushed;
+        synchronized (this) {
+            if (isBatchTimeElapsed(currentTime)) {
+                flush(currentTime);
+            }
+            batchFlushed = !flushedBatches.isEmpty();
+        }
+        if (batchFlushed) {
+            emitFlushedBatches(nextProcessor);
+        }
+    }
+
+    private void addToActiveEpoch(ComplexEventChunk<StreamEvent> streamEventChunk) {
+        StreamEvent firstEvent = streamEventChunk.getFirst();
+        Map<Object, StreamEvent> chunkEvents = firstEvent != null && firstEvent.getNext() != null
+                ? deduplicate(streamEventChunk) : null;
+        while (true) {
+            Epoch epoch = activeEpoch;
+            epoch.lock.readLock().lock();
+            try {
+                if (epoch.sealed) {
+                    // the epoch has been sealed after it was read, retry on the one that replaced it
+                    continue;
+                }
+                if (chunkEvents != null) {
+                    for (Map.Entry<Object, StreamEvent> entry : chunkEvents.entrySet()) {
+                        addUniqueEvent(epoch.events, entry.getKey(),
+                                ParallelBatchBuilder.copy(entry.getValue(), ComplexEvent.Type.CURRENT));
+                    }
+                    return;
+                }
+                while (streamEventChunk.hasNext()) {
+                    StreamEvent streamEvent = streamEventChunk.next();
+                    if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                        continue;
+                    }
+                    // the pooled cloner is not thread safe
+                    StreamEvent clonedStreamEvent = ParallelBatchBuilder.copy(streamEvent, ComplexEvent.Type.CURRENT);
+                    addUniqueEvent(epoch.events, uniqueKey(clonedStreamEvent), clonedStreamEvent);
+                }
+                return;
+            } finally {
+                epoch.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Deduplicates the current events of a chunk by their unique key in a single pass, keeping the occurrence the
+     * window keeps, so that only one event per key is copied and added to the batch. This is only equivalent to
+     * adding the events one by one when no batch can be flushed in the middle of the chunk.
+     */
+    private Map<Object, StreamEvent> deduplicate(ComplexEventChunk<StreamEvent> streamEventChunk) {
+        Map<Object, StreamEvent> chunkEvents = new HashMap<>();
+        boolean keepsFirstEvent = keepsFirstEvent();
+        while (streamEventChunk.hasNext()) {
+            StreamEvent streamEvent = streamEventChunk.next();
+            if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                continue;
+            }
+            if (keepsFirstEvent) {
+                chunkEvents.putIfAbsent(uniqueKey(streamEvent), streamEvent);
+            } else {
+                chunkEvents.put(uniqueKey(streamEvent), streamEvent);
+            }
+        }
+        return chunkEvents;
+    }
+
+    /**
+     * Puts a ring buffer in front of the window when the ringBufferSize system parameter is set. Producers then
+     * only publish their events into the ring, and a single owner thread adds them to the window in batches, so
+     * producers never wait for the window lock. The ringBufferWaitStrategy system parameter decides how the owner
+     * thread waits for events (BUSY_SPIN, YIELDING or SLEEPING), and ringBufferBackpressure what a producer does on
+     * a full ring (BLOCK or DROP). Events still in the ring are not part of snapshots.
+     */
+    protected void initRingBufferIntake(ConfigReader configReader) {
+        int ringBufferSize = Integer.parseInt(configReader.readConfig("ringBufferSize", "0"));
+        if (ringBufferSize == 0) {
+            return;
+        }
+        RingBufferIntake.WaitStrategy waitStrategy;
+        RingBufferIntake.Backpressure backpressure;
+        try {
+            waitStrategy = RingBufferIntake.WaitStrategy.valueOf(
+                    configReader.readConfig("ringBufferWaitStrategy", "SLEEPING").toUpperCase(Locale.ENGLISH));
+            backpressure = RingBufferIntake.Backpressure.valueOf(
+                    configReader.readConfig("ringBufferBackpressure", "BLOCK").toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new SiddhiAppValidationException("Ring buffer wait strategy should be one of BUSY_SPIN, "
+                    + "YIELDING or SLEEPING, and its backpressure either BLOCK or DROP", e);
+        }
+        ringBufferIntake = new RingBufferIntake(ringBufferSize, waitStrategy, backpressure,
+                new RingBufferIntake.Handler() {
+                    @Override
+                    public void onEvents(ComplexEventChunk<StreamEvent> streamEventChunk) {
+                        processSynchronously(streamEventChunk, nextProcessor, streamEventCloner);
+                    }
+                });
+    }
+
+    /**
+     * @return number of events waiting in the ring buffer, or -1 without a ring buffer
+     */
+    public long getRingBufferOccupancy() {
+        return ringBufferIntake != null ? ringBufferIntake.getOccupancy() : -1;
+    }
+
+    /**
+     * @return capacity of the ring buffer, or -1 without a ring buffer
+     */
+    public int getRingBufferCapacity() {
+        return ringBufferIntake != null ? ringBufferIntake.getCapacity() : -1;
+    }
+
+    /**
+     * @return number of events dropped as the ring buffer was full
+     */
+    public long getRingBufferDroppedEvents() {
+        return ringBufferIntake != null ? ringBufferIntake.getDroppedEvents() : 0;
+    }
+
+    /**
+     * Plans the state of the window for how the query uses it. The last flushed batch is only kept as expired
+     * copies, to be emitted at the next flush, when the output of the query expects expired events. It is also kept
+     * once a join compiles a condition on it, see
+     * {@link #compileCondition(Expression, MatchingMetaInfoHolder, SiddhiAppContext, List, Map, String)}, and always
+     * for a named window, which on-demand queries can search at any time. Otherwise the copies would be dropped by
+     * the selector without ever being matched, and flushing only stamps and links the events of the batch.
+     *
+     * @param outputExpectsExpiredEvents whether the output of the query expects expired events
+     */
+    protected void planState(boolean outputExpectsExpiredEvents) {
+        keepsFlushedBatch = outputExpectsExpiredEvents || inputDefinition instanceof WindowDefinition;
+    }
+
+    /**
+     * Lets the window get its timer events from the {@link SharedExpiryService} when the sharedExpiry system
+     * parameter is set.
+     */
+    protected void initSharedExpiry(ConfigReader configReader) {
+        sharedExpiry = SharedExpiryService.register(configReader, siddhiAppContext, this);
+    }
+
+    private void notifyAt(long time) {
+        if (sharedExpiry != null) {
+            sharedExpiry.notifyAt(time);
+        } else {
+            scheduler.notifyAt(time);
+        }
+    }
+
+    /**
+     * Windows that flush their batches only when {@link #isBatchTimeElapsed(long)} is true, and whose
+     * {@link #addUniqueEvent(Map, Object, StreamEvent)} is safe on a concurrent map, may let producers
+     * add events into an active epoch holding only its shared lock, so that producers neither wait for each other
+     * nor for a flush. {@link #onChunk(long)} and {@link #isBatchFull(int)} are then not called.
+     *
+     * @return true if events are accepted without the window lock
+     */
+    protected boolean hasConcurrentIntake() {
+        return false;
+    }
+
+    /**
+     * Called once for every arrived chunk, including the ones carrying timer events, before its events are added.
+     *
+     * @param currentTime current time
+     * @return what to do with the events of the chunk
+     */
+    protected abstract ChunkAction onChunk(long currentTime);
+
+    /**
+     * @param size number of unique events in the current batch
+     * @return true if the current batch should be flushed right away
+     */
+    protected boolean isBatchFull(int size) {
+        return false;
+    }
+
+    /**
+     * Called after the current batch has been flushed as it became full.
+     *
+     * @return true if the rest of the events of the chunk should be added to the next batch, false to drop them
+     */
+    protected boolean onBatchFull() {
+        return true;
+    }
+
+    /**
+     * Called right before the current batch is flushed.
+     *
+     * @param batch the events to be flushed keyed by their unique key, which can still be changed
+     */
+    protected void beforeFlush(Map<Object, StreamEvent> batch) {
+    }
+
+    /**
+     * Adds the state a subclass keeps besides the batches to a snapshot. Called with the emit lock and the window
+     * monitor held, in the order the flushes take them.
+     *
+     * @param state the snapshot of the window
+     */
+    protected void saveState(Map<String, Object> state) {
+    }
+
+    /**
+     * Restores the state added by {@link #saveState(Map)}, with the same locks held.
+     *
+     * @param state the snapshot of the window
+     */
+    protected void loadState(Map<String, Object> state) {
+    }
+
+    /**
+     * Only consulted by windows with concurrent intake, which deduplicate chunks before adding them to a batch.
+     *
+     * @return true if {@link #addUniqueEvent(Map, Object, StreamEvent)} keeps the first event of a key, false if it
+     * keeps the latest one
+     */
+    protected boolean keepsFirstEvent() {
+        return false;
+    }
+
+    /**
+     * Adds an event to the current batch. By default the event replaces the event with the same unique key.
+     *
+     * @param uniqueKey unique key of the event, never null
+     */
+    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, Object uniqueKey,
+                                  StreamEvent clonedStreamEvent) {
+        uniqueEventMap.put(uniqueKey, clonedStreamEvent);
+    }
+
+    private Object uniqueKey(StreamEvent streamEvent) {
+        KeyExtractor uniqueKeyExtractor = this.uniqueKeyExtractor;
+        if (uniqueKeyExtractor == null) {
+            // the unique key executor is only set by the init of the concrete window
+            uniqueKeyExtractor = new KeyExtractor(uniqueKeyExpressionExecutor);
+            this.uniqueKeyExtractor = uniqueKeyExtractor;
+        }
+        Object uniqueKey = uniqueKeyExtractor.extract(streamEvent);
+        // concurrent maps do not take null keys
+        return uniqueKey != null ? uniqueKey : NullKey.INSTANCE;
+    }
+
+    /**
+     * Advances the processing time trigger and schedules its next firing.
+     *
+     * @param currentTime current time
+     * @return true if the end of a time batch has been reached
+     */
+    protected boolean isBatchTimeElapsed(long currentTime) {
+        if (nextEmitTime == -1) {
+            if (isStartTimeEnabled) {
+                nextEmitTime = getNextEmitTime(currentTime);
+            } else {
+                nextEmitTime = currentTime + timeInMilliSeconds;
+            }
+            if (scheduler != null) {
+                notifyAt(nextEmitTime);
+            }
+        }
+        if (currentTime >= nextEmitTime) {
+            nextEmitTime += timeInMilliSeconds;
+            if (scheduler != null) {
+                notifyAt(nextEmitTime);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * returns the next emission time based on system clock round time values.
+     *
+     * @param currentTime the current time.
+     * @return next emit time
+     */
+    private long getNextEmitTime(long currentTime) {
+        long elapsedTimeSinceLastEmit = (currentTime - startTime) % timeInMilliSeconds;
+        return currentTime + (timeInMilliSeconds - elapsedTimeSinceLastEmit);
+    }
+
+    /**
+     * Detaches the current batch, to be emitted with the previous batch as expired events.
+     */
+    private void flush(long currentTime) {
+        if (hasConcurrentIntake()) {
+            Epoch sealedEpoch = activeEpoch;
+            activeEpoch = new Epoch();
+            sealedEpoch.seal();
+            beforeFlush(sealedEpoch.events);
+            flushedBatches.add(new FlushedBatch(sealedEpoch.events.values(), currentTime));
+        } else {
+            beforeFlush(uniqueEventMap);
+            flushedBatches.add(new FlushedBatch(new ArrayList<>(uniqueEventMap.values()), currentTime));
+            uniqueEventMap.clear();
+        }
+    }
+
+    /**
+     * Emits the detached batches in order, unless another thread is emitting them. That thread then emits the
+     * batches detached in the meantime as well, so the events of the next batch are never held back by an emission.
+     */
+    private void emitFlushedBatches(Processor nextProcessor) {
+        while (emitLock.tryLock()) {
+            try {
+                while (true) {
+                    FlushedBatch flushedBatch;
+                    synchronized (this) {
+                        flushedBatch = flushedBatches.poll();
+                    }
+                    if (flushedBatch == null) {
+                        break;
+                    }
+                    ComplexEventChunk<StreamEvent> outputEventChunk = prepare(flushedBatch);
+                    if (outputEventChunk != null) {
+                        nextProcessor.process(outputEventChunk);
+                    }
+                }
+            } finally {
+                emitLock.unlock();
+            }
+            synchronized (this) {
+                // a batch detached right before the emit lock was released has to be emitted by this thread
+                if (flushedBatches.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the output of a detached batch: the previous batch as expired events followed by a reset event and
+     * the detached batch, which then becomes the previous batch.
+     */
+    private ComplexEventChunk<StreamEvent> prepare(FlushedBatch flushedBatch) {
+        StreamEvent[] events = flushedBatch.events.toArray(new StreamEvent[flushedBatch.events.size()]);
+        StreamEvent[] expiredEvents = ParallelBatchBuilder.build(events, flushedBatch.flushTime,
+                parallelFlushThreshold, keepsFlushedBatch);
+        StreamEvent[] previousEvents;
+        synchronized (this) {
+            previousEvents = eventsToBeExpired;
+            eventsToBeExpired = expiredEvents;
+        }
+        StreamEvent first = null;
+        StreamEvent last = null;
+        if (previousEvents.length > 0) {
+            for (StreamEvent expiredEvent : previousEvents) {
+                expiredEvent.setTimestamp(flushedBatch.flushTime);
+            }
+            first = previousEvents[0];
+            last = previousEvents[previousEvents.length - 1];
+        }
+        if (events.length > 0) {
+            // add reset event in front of current events
+            StreamEvent resetEvent = ParallelBatchBuilder.copy(events[0], ComplexEvent.Type.RESET);
+            resetEvent.setNext(events[0]);
+            if (last == null) {
+                first = resetEvent;
+            } else {
+                last.setNext(resetEvent);
+            }
+            last = events[events.length - 1];
+        }
+        if (first == null) {
+            return null;
+        }
+        return new ComplexEventChunk<StreamEvent>(first, last, true);
+    }
+
+    /**
+     * @return the events joins and on-demand queries are matched against, which are by default the events of the
+     * last flushed batch
+     */
+    protected Object getFindableEvents() {
+        return eventsToBeExpiredView;
+    }
+
+    protected Map<Object, StreamEvent> getUniqueEventMap() {
+        return uniqueEventMap;
+    }
+
+    public synchronized void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public synchronized Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public void start() {
+        if (ringBufferIntake != null) {
+            ringBufferIntake.start(siddhiAppContext.getExecutorService());
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (ringBufferIntake != null) {
+            ringBufferIntake.stop();
+        }
+        if (sharedExpiry != null) {
+            sharedExpiry.cancel();
+        }
+    }
+
+    @Override
+    public Map<String, Object> currentState() {
+        emitLock.lock();
+        try {
+            synchronized (this) {
+                Map<String, Object> map = new HashMap<>();
+                map.put("uniqueEventMap", new HashMap<>(hasConcurrentIntake() ? activeEpoch.events : uniqueEventMap));
+                map.put("eventsToBeExpired", eventsToBeExpired);
+                map.put("flushedBatches", new ArrayList<>(flushedBatches));
+                saveState(map);
+                return map;
+            }
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    @Override
+    public void restoreState(Map<String, Object> map) {
+        emitLock.lock();
+        try {
+            synchronized (this) {
+                // the map is restored in place as compiled conditions refer to it
+                uniqueEventMap.clear();
+                activeEpoch = new Epoch();
+                if (map.get("uniqueEventMap") != null) {
+                    (hasConcurrentIntake() ? activeEpoch.events : uniqueEventMap)
+                            .putAll((Map<Object, StreamEvent>) map.get("uniqueEventMap"));
+                }
+                eventsToBeExpired = map.get("eventsToBeExpired") != null
+                        ? (StreamEvent[]) map.get("eventsToBeExpired") : new StreamEvent[0];
+                flushedBatches.clear();
+                if (map.get("flushedBatches") != null) {
+                    flushedBatches.addAll((List<FlushedBatch>) map.get("flushedBatches"));
+                }
+                loadState(map);
+            }
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    @Override
+    public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator) {
+            return ((Operator) compiledCondition).find(matchingEvent, getFindableEvents(), streamEventCloner);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * The conditions compiled on this window are cloned for the copy rather than compiled again, so the copy keeps
+     * its batches whenever this window does.
+     */
+    @Override
+    public Processor cloneProcessor(String key) {
+        AbstractUniqueBatchWindowProcessor window = (AbstractUniqueBatchWindowProcessor) super.cloneProcessor(key);
+        window.keepsFlushedBatch = keepsFlushedBatch;
+        return window;
+    }
+
+    @Override
+    public CompiledCondition compileCondition(Expression expression,
+                                              MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                              SiddhiAppContext siddhiAppContext,
+                                              List<VariableExpressionExecutor> list, Map<String, Table> map,
+                                              String queryName) {
+        Object findableEvents = getFindableEvents();
+        if (findableEvents == eventsToBeExpiredView) {
+            keepsFlushedBatch = true;
+        }
+        return OperatorParser.constructOperator(findableEvents, expression, matchingMetaInfoHolder,
+                siddhiAppContext, list, map, queryName);
+    }
+
+    /**
+     * A batch detached from the window, waiting to be emitted.
+     */
+    private static final class FlushedBatch implements Serializable {
+
+        private static final long serialVersionUID = 6395216402817562712L;
+
+        private final Collection<StreamEvent> events;
+        private final long flushTime;
+
+        private FlushedBatch(Collection<StreamEvent> events, long flushTime) {
+            this.events = events;
+            this.flushTime = flushTime;
+        }
+    }
+
+    /**
+     * Batch being filled by concurrent producers. Producers add events holding the shared lock, and the epoch is
+     * sealed holding the exclusive lock, which waits for the producers that are still adding.
+     */
+    private static final class Epoch {
+
+        private final ConcurrentHashMap<Object, StreamEvent> events = new ConcurrentHashMap<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean sealed;
+
+        private void seal() {
+            lock.writeLock().lock();
+            try {
+                sealed = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Stands for a null unique key.
+     */
+    private enum NullKey {
+        INSTANCE
+    }
+}
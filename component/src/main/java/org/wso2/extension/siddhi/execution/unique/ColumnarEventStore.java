@@ -0,0 +1,594 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Struct of arrays store for the events retained by a window. Each attribute of the before window, on after window
+ * and output data is kept in a column of primitives, strings as codes of a dictionary, and the slots are kept in
+ * arrival order by int links, with freed slots reused through a free list. Events are only materialized as
+ * {@link StreamEvent}s when they are emitted, and joins iterate the store through a single reused event.
+ * <p>
+ * The type of a column is taken from the first event added. A column falls back to holding objects when a value of
+ * another type arrives.
+ */
+final class ColumnarEventStore {
+
+    private static final int NONE = -1;
+
+    private int capacity;
+    private long[] timestamps;
+    private int[] keyIds;
+    private int[] nextSlots;
+    private int[] previousSlots;
+    private int head = NONE;
+    private int tail = NONE;
+    private int freeHead = NONE;
+    private int size;
+    private int usedSlots;
+    private Column[][] columns;
+    private final EventView view = new EventView();
+
+    ColumnarEventStore(int initialCapacity) {
+        capacity = Math.max(initialCapacity, 16);
+        timestamps = new long[capacity];
+        keyIds = new int[capacity];
+        nextSlots = new int[capacity];
+        previousSlots = new int[capacity];
+    }
+
+    /**
+     * Appends an event after the latest one.
+     *
+     * @param keyId id of the unique key of the event, as encoded by a {@link KeyDictionary}
+     * @return slot of the event
+     */
+    int add(StreamEvent streamEvent, int keyId) {
+        if (columns == null) {
+            columns = new Column[][]{createColumns(streamEvent.getBeforeWindowData()),
+                    createColumns(streamEvent.getOnAfterWindowData()), createColumns(streamEvent.getOutputData())};
+        }
+        int slot;
+        if (freeHead != NONE) {
+            slot = freeHead;
+            freeHead = nextSlots[slot];
+        } else {
+            if (usedSlots == capacity) {
+                grow();
+            }
+            slot = usedSlots++;
+        }
+        timestamps[slot] = streamEvent.getTimestamp();
+        keyIds[slot] = keyId;
+        store(0, slot, streamEvent.getBeforeWindowData());
+        store(1, slot, streamEvent.getOnAfterWindowData());
+        store(2, slot, streamEvent.getOutputData());
+        nextSlots[slot] = NONE;
+        previousSlots[slot] = tail;
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            nextSlots[tail] = slot;
+        }
+        tail = slot;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Removes an event, releasing its slot for reuse.
+     */
+    void remove(int slot) {
+        int previous = previousSlots[slot];
+        int next = nextSlots[slot];
+        if (previous == NONE) {
+            head = next;
+        } else {
+            nextSlots[previous] = next;
+        }
+        if (next == NONE) {
+            tail = previous;
+        } else {
+            previousSlots[next] = previous;
+        }
+        for (Column[] segment : columns) {
+            for (Column column : segment) {
+                column.clear(slot);
+            }
+        }
+        nextSlots[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    void clear() {
+        head = NONE;
+        tail = NONE;
+        freeHead = NONE;
+        size = 0;
+        usedSlots = 0;
+        columns = null;
+    }
+
+    /**
+     * @return slot of the earliest event, or -1 if the store is empty
+     */
+    int first() {
+        return head;
+    }
+
+    long timestamp(int slot) {
+        return timestamps[slot];
+    }
+
+    int keyId(int slot) {
+        return keyIds[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Materializes an event into a new {@link StreamEvent}.
+     */
+    StreamEvent materialize(int slot, ComplexEvent.Type type) {
+        StreamEvent streamEvent = new StreamEvent(columns[0].length, columns[1].length, columns[2].length);
+        load(slot, streamEvent);
+        streamEvent.setType(type);
+        return streamEvent;
+    }
+
+    /**
+     * Materializes the events in arrival order, to be snapshot.
+     */
+    List<StreamEvent> toList() {
+        List<StreamEvent> streamEvents = new ArrayList<StreamEvent>(size);
+        for (int slot = head; slot != NONE; slot = nextSlots[slot]) {
+            streamEvents.add(materialize(slot, ComplexEvent.Type.EXPIRED));
+        }
+        return streamEvents;
+    }
+
+    /**
+     * @return live view of the events for joins, whose iterator fills and returns one reused event per slot, hence
+     * only valid until the next step of the iteration
+     */
+    Collection<StreamEvent> view() {
+        return view;
+    }
+
+    private void load(int slot, StreamEvent streamEvent) {
+        streamEvent.setTimestamp(timestamps[slot]);
+        load(0, slot, streamEvent.getBeforeWindowData());
+        load(1, slot, streamEvent.getOnAfterWindowData());
+        load(2, slot, streamEvent.getOutputData());
+    }
+
+    private void store(int segment, int slot, Object[] data) {
+        Column[] segmentColumns = columns[segment];
+        for (int i = 0; i < segmentColumns.length; i++) {
+            Object value = data[i];
+            if (!segmentColumns[i].set(slot, value)) {
+                segmentColumns[i] = new ObjectColumn(segmentColumns[i], usedSlots, capacity);
+                segmentColumns[i].set(slot, value);
+            }
+        }
+    }
+
+    private void load(int segment, int slot, Object[] data) {
+        Column[] segmentColumns = columns[segment];
+        for (int i = 0; i < segmentColumns.length; i++) {
+            data[i] = segmentColumns[i].get(slot);
+        }
+    }
+
+    private Column[] createColumns(Object[] data) {
+        if (data == null) {
+            return new Column[0];
+        }
+        Column[] segmentColumns = new Column[data.length];
+        for (int i = 0; i < data.length; i++) {
+            Object value = data[i];
+            if (value instanceof Long) {
+                segmentColumns[i] = new LongColumn(capacity);
+            } else if (value instanceof Integer) {
+                segmentColumns[i] = new IntColumn(capacity);
+            } else if (value instanceof Double) {
+                segmentColumns[i] = new DoubleColumn(capacity);
+            } else if (value instanceof Float) {
+                segmentColumns[i] = new FloatColumn(capacity);
+            } else if (value instanceof Boolean) {
+                segmentColumns[i] = new BooleanColumn();
+            } else if (value instanceof String) {
+                segmentColumns[i] = new StringColumn(capacity);
+            } else {
+                segmentColumns[i] = new ObjectColumn(capacity);
+            }
+        }
+        return segmentColumns;
+    }
+
+    private void grow() {
+        capacity = capacity * 2;
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        keyIds = Arrays.copyOf(keyIds, capacity);
+        nextSlots = Arrays.copyOf(nextSlots, capacity);
+        previousSlots = Arrays.copyOf(previousSlots, capacity);
+        for (Column[] segment : columns) {
+            for (Column column : segment) {
+                column.grow(capacity);
+            }
+        }
+    }
+
+    /**
+     * Values of one attribute, by slot.
+     */
+    private abstract static class Column {
+
+        /**
+         * @return false if the value does not fit the column
+         */
+        abstract boolean set(int slot, Object value);
+
+        abstract Object get(int slot);
+
+        abstract void clear(int slot);
+
+        abstract void grow(int capacity);
+    }
+
+    /**
+     * Column of primitives, with a bit set marking null values.
+     */
+    private abstract static class PrimitiveColumn extends Column {
+
+        final BitSet nulls = new BitSet();
+
+        @Override
+        boolean set(int slot, Object value) {
+            if (value == null) {
+                nulls.set(slot);
+                return true;
+            }
+            if (!setValue(slot, value)) {
+                return false;
+            }
+            nulls.clear(slot);
+            return true;
+        }
+
+        @Override
+        Object get(int slot) {
+            return nulls.get(slot) ? null : getValue(slot);
+        }
+
+        @Override
+        void clear(int slot) {
+            nulls.clear(slot);
+        }
+
+        abstract boolean setValue(int slot, Object value);
+
+        abstract Object getValue(int slot);
+    }
+
+    private static final class LongColumn extends PrimitiveColumn {
+
+        private long[] values;
+
+        LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        boolean setValue(int slot, Object value) {
+            if (!(value instanceof Long)) {
+                return false;
+            }
+            values[slot] = (Long) value;
+            return true;
+        }
+
+        @Override
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final class IntColumn extends PrimitiveColumn {
+
+        private int[] values;
+
+        IntColumn(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        boolean setValue(int slot, Object value) {
+            if (!(value instanceof Integer)) {
+                return false;
+            }
+            values[slot] = (Integer) value;
+            return true;
+        }
+
+        @Override
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final class DoubleColumn extends PrimitiveColumn {
+
+        private double[] values;
+
+        DoubleColumn(int capacity) {
+            values = new double[capacity];
+        }
+
+        @Override
+        boolean setValue(int slot, Object value) {
+            if (!(value instanceof Double)) {
+                return false;
+            }
+            values[slot] = (Double) value;
+            return true;
+        }
+
+        @Override
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final class FloatColumn extends PrimitiveColumn {
+
+        private float[] values;
+
+        FloatColumn(int capacity) {
+            values = new float[capacity];
+        }
+
+        @Override
+        boolean setValue(int slot, Object value) {
+            if (!(value instanceof Float)) {
+                return false;
+            }
+            values[slot] = (Float) value;
+            return true;
+        }
+
+        @Override
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private static final class BooleanColumn extends PrimitiveColumn {
+
+        private final BitSet values = new BitSet();
+
+        @Override
+        boolean setValue(int slot, Object value) {
+            if (!(value instanceof Boolean)) {
+                return false;
+            }
+            values.set(slot, (Boolean) value);
+            return true;
+        }
+
+        @Override
+        Object getValue(int slot) {
+            return values.get(slot);
+        }
+
+        @Override
+        void grow(int capacity) {
+            // bit sets grow on their own
+        }
+    }
+
+    /**
+     * Column of strings kept as codes of a reference counted dictionary, so that each distinct string is held once.
+     */
+    private static final class StringColumn extends Column {
+
+        private int[] codes;
+        private final Map<String, Integer> codesByString = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        private final List<Integer> referenceCounts = new ArrayList<Integer>();
+        private final List<Integer> freeCodes = new ArrayList<Integer>();
+
+        StringColumn(int capacity) {
+            codes = new int[capacity];
+            Arrays.fill(codes, NONE);
+        }
+
+        @Override
+        boolean set(int slot, Object value) {
+            if (value != null && !(value instanceof String)) {
+                return false;
+            }
+            release(slot);
+            if (value == null) {
+                return true;
+            }
+            Integer code = codesByString.get(value);
+            if (code == null) {
+                if (freeCodes.isEmpty()) {
+                    code = strings.size();
+                    strings.add((String) value);
+                    referenceCounts.add(0);
+                } else {
+                    code = freeCodes.remove(freeCodes.size() - 1);
+                    strings.set(code, (String) value);
+                }
+                codesByString.put((String) value, code);
+            }
+            referenceCounts.set(code, referenceCounts.get(code) + 1);
+            codes[slot] = code;
+            return true;
+        }
+
+        @Override
+        Object get(int slot) {
+            int code = codes[slot];
+            return code == NONE ? null : strings.get(code);
+        }
+
+        @Override
+        void clear(int slot) {
+            release(slot);
+        }
+
+        private void release(int slot) {
+            int code = codes[slot];
+            if (code == NONE) {
+                return;
+            }
+            codes[slot] = NONE;
+            int referenceCount = referenceCounts.get(code) - 1;
+            referenceCounts.set(code, referenceCount);
+            if (referenceCount == 0) {
+                codesByString.remove(strings.get(code));
+                strings.set(code, null);
+                freeCodes.add(code);
+            }
+        }
+
+        @Override
+        void grow(int capacity) {
+            int oldCapacity = codes.length;
+            codes = Arrays.copyOf(codes, capacity);
+            Arrays.fill(codes, oldCapacity, capacity, NONE);
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+
+        private Object[] values;
+
+        ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        /**
+         * Takes over the values of a column that did not fit a value.
+         */
+        ObjectColumn(Column column, int usedSlots, int capacity) {
+            values = new Object[capacity];
+            for (int slot = 0; slot < usedSlots; slot++) {
+                values[slot] = column.get(slot);
+            }
+        }
+
+        @Override
+        boolean set(int slot, Object value) {
+            values[slot] = value;
+            return true;
+        }
+
+        @Override
+        Object get(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void clear(int slot) {
+            values[slot] = null;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    /**
+     * Events of the store, iterated through one reused event.
+     */
+    private final class EventView extends AbstractCollection<StreamEvent> {
+
+        @Override
+        public Iterator<StreamEvent> iterator() {
+            final StreamEvent reusedEvent = columns == null ? null
+                    : new StreamEvent(columns[0].length, columns[1].length, columns[2].length);
+            if (reusedEvent != null) {
+                reusedEvent.setType(ComplexEvent.Type.EXPIRED);
+            }
+            return new Iterator<StreamEvent>() {
+                private int nextSlot = head;
+
+                @Override
+                public boolean hasNext() {
+                    return nextSlot != NONE;
+                }
+
+                @Override
+                public StreamEvent next() {
+                    if (nextSlot == NONE) {
+                        throw new NoSuchElementException();
+                    }
+                    load(nextSlot, reusedEvent);
+                    nextSlot = nextSlots[nextSlot];
+                    return reusedEvent;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
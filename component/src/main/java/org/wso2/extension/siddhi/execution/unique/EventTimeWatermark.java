@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import java.io.Serializable;
+
+/**
+ * Watermark derived from the time stamps carried by the events. The watermark trails the latest event time seen
+ * by the maximum out of orderness and never moves backwards, hence everything at or before it can be treated as
+ * complete. When the source has been idle for at least the idle timeout, event time is assumed to progress at the
+ * rate of the Siddhi clock, so that pending batches still close while no events arrive.
+ */
+final class EventTimeWatermark implements Serializable {
+
+    private static final long serialVersionUID = 4213378061585724313L;
+
+    private final long maxOutOfOrderness;
+    private final long idleTimeout;
+    private long maxEventTime = Long.MIN_VALUE;
+    private long lastArrivalTime;
+    private long watermark = Long.MIN_VALUE;
+
+    /**
+     * @param maxOutOfOrderness time by which the events may arrive out of order
+     * @param idleTimeout       Siddhi clock time the source should be idle before the watermark advances on its own,
+     *                          zero or negative to only advance on events
+     */
+    EventTimeWatermark(long maxOutOfOrderness, long idleTimeout) {
+        this.maxOutOfOrderness = maxOutOfOrderness;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Advances the watermark with the time stamp of an arrived event.
+     *
+     * @param eventTime   time stamp carried by the event
+     * @param arrivalTime Siddhi clock time the event arrived at
+     * @return the watermark after the event
+     */
+    long onEvent(long eventTime, long arrivalTime) {
+        if (eventTime > maxEventTime) {
+            maxEventTime = eventTime;
+        }
+        lastArrivalTime = arrivalTime;
+        advanceTo(maxEventTime - maxOutOfOrderness);
+        return watermark;
+    }
+
+    /**
+     * Advances the watermark by the time the source has been idle, if that is at least the idle timeout.
+     *
+     * @param currentTime current Siddhi clock time
+     * @return the watermark after advancing
+     */
+    long onIdle(long currentTime) {
+        long idleTime = currentTime - lastArrivalTime;
+        if (maxEventTime != Long.MIN_VALUE && idleTimeout > 0 && idleTime >= idleTimeout) {
+            advanceTo(maxEventTime - maxOutOfOrderness + idleTime);
+        }
+        return watermark;
+    }
+
+    /**
+     * Computes the Siddhi clock time at which the watermark reaches the given event time, if no further events
+     * arrive.
+     *
+     * @param eventTime event time to be reached
+     * @return Siddhi clock time to check the watermark at
+     */
+    long idleTimeReaching(long eventTime) {
+        return lastArrivalTime + Math.max(idleTimeout, eventTime - (maxEventTime - maxOutOfOrderness));
+    }
+
+    long current() {
+        return watermark;
+    }
+
+    private void advanceTo(long time) {
+        if (time > watermark) {
+            watermark = time;
+        }
+    }
+}
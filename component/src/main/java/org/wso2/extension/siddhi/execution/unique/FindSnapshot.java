@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.stream.MetaStreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copy of the events of a window that joins search without taking the lock of the window, so that probing the
+ * window neither waits for the events being processed nor sees them half updated.
+ * <p>
+ * The window marks the copy stale whenever it changes its events, while holding its lock. The first search after a
+ * change copies the events under the window lock, and the searches that follow share that copy without locking
+ * until the next change. The copy is an immutable list of copies of the events, so any number of searches can
+ * iterate it at once while the window goes on changing its own events.
+ * <p>
+ * Taking the copy costs a copy of every event of the window, paid under the window lock by the first search after
+ * each change. A snapshot is therefore only cheaper than searching under the lock when searches far outnumber
+ * changes, such as a window refreshed in batches and probed by a busy stream. Under continuous ingestion nearly
+ * every search pays for a full copy, which holds the lock longer than the search it replaces.
+ * <p>
+ * The cloner of a window takes its events from a pool that is not thread safe, so searches on the copy clone their
+ * matches through {@link #MATCH_CLONER} instead.
+ */
+abstract class FindSnapshot {
+
+    static final String FIND_SNAPSHOT = "findSnapshot";
+
+    /**
+     * Clones matches without a pool, so that any number of searches can use it at once.
+     */
+    static final StreamEventCloner MATCH_CLONER = new StreamEventCloner(new MetaStreamEvent(), null) {
+        @Override
+        public StreamEvent copyStreamEvent(StreamEvent streamEvent) {
+            return ParallelBatchBuilder.copy(streamEvent, streamEvent.getType());
+        }
+    };
+
+    private final Object lock;
+    private final AtomicLong version = new AtomicLong();
+    private volatile Copy copy = new Copy(-1, Collections.<StreamEvent>emptyList());
+
+    /**
+     * @param lock lock the window holds while changing its events
+     */
+    FindSnapshot(Object lock) {
+        this.lock = lock;
+    }
+
+    /**
+     * @return whether the window is configured to search a copy of its events
+     */
+    static boolean isEnabled(ConfigReader configReader) {
+        return Boolean.parseBoolean(configReader.readConfig(FIND_SNAPSHOT, "false"));
+    }
+
+    /**
+     * @return the events of the window as of its latest change, which are not changed afterwards
+     */
+    Collection<StreamEvent> events() {
+        Copy current = copy;
+        if (current.version == version.get()) {
+            return current.events;
+        }
+        synchronized (lock) {
+            current = copy;
+            long currentVersion = version.get();
+            if (current.version != currentVersion) {
+                current = new Copy(currentVersion, Collections.unmodifiableList(copyEvents()));
+                copy = current;
+            }
+            return current.events;
+        }
+    }
+
+    /**
+     * Marks the copy stale. Called while holding the lock of the window, whenever its events change.
+     */
+    void invalidate() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return a new list of copies of the current events of the window, which share nothing with the events the
+     * window keeps changing, called while holding its lock
+     */
+    protected abstract List<StreamEvent> copyEvents();
+
+    /**
+     * @return a new list of copies of the events of a chunk, which leaves the iteration state of the chunk untouched
+     */
+    static List<StreamEvent> copyOf(ComplexEventChunk<StreamEvent> eventChunk) {
+        List<StreamEvent> events = new ArrayList<StreamEvent>();
+        for (StreamEvent event = eventChunk.getFirst(); event != null; event = event.getNext()) {
+            events.add(ParallelBatchBuilder.copy(event, event.getType()));
+        }
+        return events;
+    }
+
+    /**
+     * @return a new list of copies of the given events
+     */
+    static List<StreamEvent> copyOf(Collection<StreamEvent> streamEvents) {
+        List<StreamEvent> events = new ArrayList<StreamEvent>(streamEvents.size());
+        for (StreamEvent event : streamEvents) {
+            events.add(ParallelBatchBuilder.copy(event, event.getType()));
+        }
+        return events;
+    }
+
+    private static final class Copy {
+        private final long version;
+        private final List<StreamEvent> events;
+
+        private Copy(long version, List<StreamEvent> events) {
+            this.version = version;
+            this.events = events;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog cardinality sketch over 64 bit hashes with 2^precision one byte registers.
+ * The harmonic sum of the registers is maintained on every update so that an estimate costs O(1), and
+ * small cardinalities are estimated with linear counting as done in HyperLogLog++.
+ */
+final class HyperLogLog implements Serializable {
+
+    private static final long serialVersionUID = -2315871642981937485L;
+
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+    private final double alphaMM;
+    private double inverseSum;
+    private int zeroRegisters;
+
+    HyperLogLog(int precision) {
+        this.precision = precision;
+        int registerCount = 1 << precision;
+        this.registers = new byte[registerCount];
+        double alpha;
+        switch (registerCount) {
+            case 16:
+                alpha = 0.673;
+                break;
+            case 32:
+                alpha = 0.697;
+                break;
+            case 64:
+                alpha = 0.709;
+                break;
+            default:
+                alpha = 0.7213 / (1 + 1.079 / registerCount);
+        }
+        this.alphaMM = alpha * registerCount * registerCount;
+        this.inverseSum = registerCount;
+        this.zeroRegisters = registerCount;
+    }
+
+    void offer(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        updateRegister(index, rank);
+    }
+
+    /**
+     * Folds the registers of the given sketch, which should have the same precision, into this sketch.
+     *
+     * @param other sketch to merge
+     */
+    void merge(HyperLogLog other) {
+        for (int i = 0; i < registers.length; i++) {
+            updateRegister(i, other.registers[i]);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(registers, (byte) 0);
+        inverseSum = registers.length;
+        zeroRegisters = registers.length;
+    }
+
+    long estimate() {
+        int registerCount = registers.length;
+        double estimate = alphaMM / inverseSum;
+        if (estimate <= 2.5 * registerCount && zeroRegisters > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    private void updateRegister(int index, int rank) {
+        int current = registers[index];
+        if (rank > current) {
+            if (current == 0) {
+                zeroRegisters--;
+            }
+            inverseSum += Math.scalb(1.0, -rank) - Math.scalb(1.0, -current);
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Computes a 64 bit hash of an attribute value. Numeric values are hashed by their bits so that no string
+     * needs to be built, while other values are hashed over the characters of their string form.
+     *
+     * @param value attribute value
+     * @return well mixed 64 bit hash
+     */
+    static long hash(Object value) {
+        long bits;
+        if (value instanceof Long || value instanceof Integer) {
+            bits = ((Number) value).longValue();
+        } else if (value instanceof Double || value instanceof Float) {
+            bits = Double.doubleToLongBits(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            bits = (Boolean) value ? 1231 : 1237;
+        } else {
+            String string = String.valueOf(value);
+            bits = 0xcbf29ce484222325L;
+            for (int i = 0; i < string.length(); i++) {
+                bits ^= string.charAt(i);
+                bits *= 0x100000001b3L;
+            }
+        }
+        return mix(bits);
+    }
+
+    private static long mix(long bits) {
+        bits ^= bits >>> 33;
+        bits *= 0xff51afd7ed558ccdL;
+        bits ^= bits >>> 33;
+        bits *= 0xc4ceb9fe1a85ec53L;
+        bits ^= bits >>> 33;
+        return bits;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of unique key values into dense int ids, so that state can be indexed by primitive ids and each
+ * distinct key value is held once, however often it recurs. Ids are reference counted. A key that is no longer
+ * referenced is kept idle with its id, so that it is encoded again without allocating when it recurs, until more than
+ * the given number of keys are idle and the least recently released ones are evicted, freeing their ids for reuse.
+ */
+final class KeyDictionary {
+
+    static final int NONE = -1;
+    static final int DEFAULT_MAX_IDLE_KEYS = 4096;
+
+    private final int maxIdleKeys;
+    private final Map<Object, Integer> ids = new HashMap<Object, Integer>();
+    private final LinkedHashSet<Integer> idleIds = new LinkedHashSet<Integer>();
+    private Object[] keys = new Object[16];
+    private int[] references = new int[16];
+    private int[] freeIds = new int[16];
+    private int freeIdCount;
+    private int nextId;
+
+    KeyDictionary(int maxIdleKeys) {
+        this.maxIdleKeys = maxIdleKeys;
+    }
+
+    /**
+     * @return id of a key that is referenced, or -1
+     */
+    int get(Object key) {
+        Integer id = ids.get(key);
+        return id == null || references[id] == 0 ? NONE : id;
+    }
+
+    /**
+     * Adds a reference to a key, encoding it if it is not known.
+     *
+     * @return id of the key
+     */
+    int acquire(Object key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = allocate();
+            keys[id] = key;
+            ids.put(key, id);
+        } else if (references[id] == 0) {
+            idleIds.remove(id);
+        }
+        references[id]++;
+        return id;
+    }
+
+    /**
+     * Removes a reference to a key, making it idle when no references are left.
+     */
+    void release(int id) {
+        if (--references[id] > 0) {
+            return;
+        }
+        idleIds.add(id);
+        if (idleIds.size() > maxIdleKeys) {
+            Iterator<Integer> iterator = idleIds.iterator();
+            int evictedId = iterator.next();
+            iterator.remove();
+            ids.remove(keys[evictedId]);
+            keys[evictedId] = null;
+            freeIds[freeIdCount++] = evictedId;
+        }
+    }
+
+    Object key(int id) {
+        return keys[id];
+    }
+
+    /**
+     * @return upper bound of the ids handed out
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    void clear() {
+        ids.clear();
+        idleIds.clear();
+        Arrays.fill(keys, null);
+        Arrays.fill(references, 0);
+        freeIdCount = 0;
+        nextId = 0;
+    }
+
+    private int allocate() {
+        if (freeIdCount > 0) {
+            return freeIds[--freeIdCount];
+        }
+        if (nextId == keys.length) {
+            int capacity = keys.length << 1;
+            keys = Arrays.copyOf(keys, capacity);
+            references = Arrays.copyOf(references, capacity);
+            freeIds = Arrays.copyOf(freeIds, capacity);
+        }
+        return nextId++;
+    }
+}
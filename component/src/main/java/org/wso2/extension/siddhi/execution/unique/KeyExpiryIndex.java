@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Index of keys to the time they were last seen, ordered by that time so that expired keys are always at the head.
+ * Keys live in slots of parallel primitive arrays that are chained into a doubly linked list in last seen order,
+ * and are located through an open addressing table of slot numbers. Apart from the key reference, a key costs a
+ * long timestamp, two int links and two int table entries.
+ */
+final class KeyExpiryIndex implements Serializable {
+
+    private static final long serialVersionUID = -6893247710372046213L;
+    private static final int NONE = -1;
+
+    private Object[] keys;
+    private long[] timestamps;
+    private int[] previous;
+    private int[] next;
+    private int[] table;
+    private int head = NONE;
+    private int tail = NONE;
+    private int freeSlot = NONE;
+    private int usedSlots = 0;
+    private int size = 0;
+
+    KeyExpiryIndex(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 8) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Records that the key was seen at the given time, moving it to the tail of the expiry order.
+     *
+     * @param key       key value, may be null
+     * @param timestamp time the key was seen, which should not be older than previously recorded times
+     * @return true if the key was not in the index
+     */
+    boolean touch(Object key, long timestamp) {
+        key = maskNull(key);
+        int position = position(key);
+        int slot = table[position] - 1;
+        if (slot != NONE) {
+            timestamps[slot] = timestamp;
+            if (slot != tail) {
+                unlink(slot);
+                linkLast(slot);
+            }
+            return false;
+        }
+        if (size == keys.length) {
+            allocate(keys.length << 1);
+            position = position(key);
+        }
+        if (freeSlot != NONE) {
+            slot = freeSlot;
+            freeSlot = next[slot];
+        } else {
+            slot = usedSlots++;
+        }
+        keys[slot] = key;
+        timestamps[slot] = timestamp;
+        table[position] = slot + 1;
+        linkLast(slot);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes all keys last seen at or before the given time.
+     *
+     * @param expiryTime latest time that is considered expired
+     * @return number of removed keys
+     */
+    int expire(long expiryTime) {
+        int removed = 0;
+        while (head != NONE && timestamps[head] <= expiryTime) {
+            int slot = head;
+            unlink(slot);
+            removeFromTable(position(keys[slot]));
+            keys[slot] = null;
+            next[slot] = freeSlot;
+            freeSlot = slot;
+            size--;
+            removed++;
+        }
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void linkLast(int slot) {
+        previous[slot] = tail;
+        next[slot] = NONE;
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            next[tail] = slot;
+        }
+        tail = slot;
+    }
+
+    private void unlink(int slot) {
+        if (previous[slot] == NONE) {
+            head = next[slot];
+        } else {
+            next[previous[slot]] = next[slot];
+        }
+        if (next[slot] == NONE) {
+            tail = previous[slot];
+        } else {
+            previous[next[slot]] = previous[slot];
+        }
+    }
+
+    /**
+     * Finds the table position holding the key, or the empty position where it should be inserted.
+     */
+    private int position(Object key) {
+        int mask = table.length - 1;
+        int position = home(key, mask);
+        while (table[position] != 0 && !keys[table[position] - 1].equals(key)) {
+            position = (position + 1) & mask;
+        }
+        return position;
+    }
+
+    private void removeFromTable(int position) {
+        int mask = table.length - 1;
+        table[position] = 0;
+        int candidate = position;
+        while (true) {
+            candidate = (candidate + 1) & mask;
+            if (table[candidate] == 0) {
+                return;
+            }
+            int candidateHome = home(keys[table[candidate] - 1], mask);
+            // shift back entries whose home position is not between the hole and their current position
+            if ((candidate > position && (candidateHome <= position || candidateHome > candidate))
+                    || (candidate < position && candidateHome <= position && candidateHome > candidate)) {
+                table[position] = table[candidate];
+                table[candidate] = 0;
+                position = candidate;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (keys == null) {
+            keys = new Object[capacity];
+            timestamps = new long[capacity];
+            previous = new int[capacity];
+            next = new int[capacity];
+        } else {
+            keys = Arrays.copyOf(keys, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        table = new int[capacity << 1];
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            table[position(keys[slot])] = slot + 1;
+        }
+    }
+
+    private static int home(Object key, int mask) {
+        int hash = (key == NullKey.INSTANCE ? 0 : key.hashCode()) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static Object maskNull(Object key) {
+        return key == null ? NullKey.INSTANCE : key;
+    }
+
+    /**
+     * Stands in for null keys, an enum so that it stays a singleton across snapshot restoration. Its identity hash
+     * code is not stable across restarts, hence it always hashes to zero.
+     */
+    private enum NullKey {
+        INSTANCE
+    }
+}
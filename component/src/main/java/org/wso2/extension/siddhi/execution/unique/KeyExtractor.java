@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
+import org.wso2.siddhi.core.util.SiddhiConstants;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Extracts the unique key of events through an extractor specialized for the key attributes of a window, instead of
+ * going through the generic expression executors for each event. Keys made of plain attributes are read straight
+ * from the data arrays of the events. A single attribute is the key as is, a pair of int attributes is packed into a
+ * long, and other combinations are compared value by value. Computed keys fall back to their executors.
+ * <p>
+ * The positions of attributes in events are only assigned once the whole query is parsed, after the windows are
+ * initialized, hence the extractor is specialized when the first event arrives.
+ */
+final class KeyExtractor {
+
+    private final ExpressionExecutor[] executors;
+    private Extractor extractor;
+
+    KeyExtractor(ExpressionExecutor... executors) {
+        this.executors = executors;
+    }
+
+    Object extract(StreamEvent event) {
+        return extractor().extract(event);
+    }
+
+    /**
+     * Computes a 64 bit hash of the unique key of an event straight from its attribute values, without creating the
+     * key.
+     */
+    long hash(StreamEvent event) {
+        return extractor().hash(event);
+    }
+
+    /**
+     * Compares the unique keys of two events attribute by attribute, without creating the keys.
+     */
+    boolean sameKey(StreamEvent event, StreamEvent otherEvent) {
+        return extractor().sameKey(event, otherEvent);
+    }
+
+    private Extractor extractor() {
+        Extractor extractor = this.extractor;
+        if (extractor == null) {
+            extractor = specialize();
+            this.extractor = extractor;
+        }
+        return extractor;
+    }
+
+    private Extractor specialize() {
+        Extractor[] attributeExtractors = new Extractor[executors.length];
+        for (int i = 0; i < executors.length; i++) {
+            attributeExtractors[i] = attributeExtractor(executors[i]);
+        }
+        if (attributeExtractors.length == 1) {
+            return attributeExtractors[0];
+        }
+        if (attributeExtractors.length == 2 && executors[0].getReturnType() == Attribute.Type.INT
+                && executors[1].getReturnType() == Attribute.Type.INT) {
+            return new PackedIntPairExtractor(attributeExtractors[0], attributeExtractors[1]);
+        }
+        return new CompositeExtractor(attributeExtractors);
+    }
+
+    private static Extractor attributeExtractor(ExpressionExecutor executor) {
+        if (executor instanceof VariableExpressionExecutor) {
+            int[] position = ((VariableExpressionExecutor) executor).getPosition();
+            int index = position[SiddhiConstants.STREAM_ATTRIBUTE_INDEX_IN_TYPE];
+            if (index >= 0) {
+                switch (position[SiddhiConstants.STREAM_ATTRIBUTE_TYPE_INDEX]) {
+                    case SiddhiConstants.BEFORE_WINDOW_DATA_INDEX:
+                        return new BeforeWindowDataExtractor(index);
+                    case SiddhiConstants.ON_AFTER_WINDOW_DATA_INDEX:
+                        return new OnAfterWindowDataExtractor(index);
+                    case SiddhiConstants.OUTPUT_DATA_INDEX:
+                        return new OutputDataExtractor(index);
+                    default:
+                        break;
+                }
+            }
+        }
+        return new ExecutorExtractor(executor);
+    }
+
+    /**
+     * Extracts a key, or a part of it, from an event.
+     */
+    private abstract static class Extractor {
+
+        abstract Object extract(StreamEvent event);
+
+        long hash(StreamEvent event) {
+            return HyperLogLog.hash(extract(event));
+        }
+
+        boolean sameKey(StreamEvent event, StreamEvent otherEvent) {
+            return Objects.equals(extract(event), extract(otherEvent));
+        }
+    }
+
+    private static final class BeforeWindowDataExtractor extends Extractor {
+
+        private final int index;
+
+        BeforeWindowDataExtractor(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            return event.getBeforeWindowData()[index];
+        }
+    }
+
+    private static final class OnAfterWindowDataExtractor extends Extractor {
+
+        private final int index;
+
+        OnAfterWindowDataExtractor(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            return event.getOnAfterWindowData()[index];
+        }
+    }
+
+    private static final class OutputDataExtractor extends Extractor {
+
+        private final int index;
+
+        OutputDataExtractor(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            return event.getOutputData()[index];
+        }
+    }
+
+    private static final class ExecutorExtractor extends Extractor {
+
+        private final ExpressionExecutor executor;
+
+        ExecutorExtractor(ExpressionExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            return executor.execute(event);
+        }
+    }
+
+    private static class CompositeExtractor extends Extractor {
+
+        final Extractor[] extractors;
+
+        CompositeExtractor(Extractor[] extractors) {
+            this.extractors = extractors;
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            Object[] values = new Object[extractors.length];
+            for (int i = 0; i < extractors.length; i++) {
+                values[i] = extractors[i].extract(event);
+            }
+            return new CompositeKey(values);
+        }
+
+        @Override
+        long hash(StreamEvent event) {
+            long hash = 0;
+            for (Extractor extractor : extractors) {
+                hash = Long.rotateLeft(hash, 31) * 0x9E3779B97F4A7C15L ^ extractor.hash(event);
+            }
+            return hash;
+        }
+
+        @Override
+        boolean sameKey(StreamEvent event, StreamEvent otherEvent) {
+            for (Extractor extractor : extractors) {
+                if (!extractor.sameKey(event, otherEvent)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Packs two int attributes into a single long key. Pairs with a null value are kept as composite keys, which
+     * never equal a packed key.
+     */
+    private static final class PackedIntPairExtractor extends CompositeExtractor {
+
+        PackedIntPairExtractor(Extractor first, Extractor second) {
+            super(new Extractor[]{first, second});
+        }
+
+        @Override
+        Object extract(StreamEvent event) {
+            Object firstValue = extractors[0].extract(event);
+            Object secondValue = extractors[1].extract(event);
+            if (firstValue == null || secondValue == null) {
+                return new CompositeKey(new Object[]{firstValue, secondValue});
+            }
+            return ((long) (Integer) firstValue << 32) | ((Integer) secondValue & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * Values of several unique key attributes, compared value by value.
+     */
+    private static final class CompositeKey implements Serializable {
+
+        private static final long serialVersionUID = 4127093624913508112L;
+
+        private final Object[] values;
+        private final int hashCode;
+
+        CompositeKey(Object[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CompositeKey && hashCode == ((CompositeKey) other).hashCode
+                    && Arrays.equals(values, ((CompositeKey) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * First events of unique keys partitioned into generations by the time their key was first seen, for windows that
+ * only need to remember a key for a limited horizon. Each generation is a {@link KeyHashTable} covering a fixed slice
+ * of time, and a key is looked up in all of them. When time moves past the horizon the oldest generation is dropped
+ * as a whole, so expiring keys never visits them one by one. A key is remembered for at least the horizon and for
+ * less than the horizon and one generation.
+ * Without a horizon there is a single generation that is never dropped.
+ */
+final class KeyGenerations {
+
+    private final KeyExtractor keyExtractor;
+    private final long generationTime;
+    private final KeyHashTable[] generations;
+    private int current;
+    private long currentSlot = Long.MIN_VALUE;
+    private final Collection<StreamEvent> values = new AbstractCollection<StreamEvent>() {
+        @Override
+        public Iterator<StreamEvent> iterator() {
+            return new Iterator<StreamEvent>() {
+                private int generation;
+                private Iterator<StreamEvent> iterator = generation(0).values().iterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!iterator.hasNext()) {
+                        if (++generation == generations.length) {
+                            return false;
+                        }
+                        iterator = generation(generation).values().iterator();
+                    }
+                    return true;
+                }
+
+                @Override
+                public StreamEvent next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return iterator.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (KeyHashTable generation : generations) {
+                size += generation.values().size();
+            }
+            return size;
+        }
+    };
+
+    KeyGenerations(KeyExtractor keyExtractor) {
+        this(keyExtractor, 0, 1);
+    }
+
+    /**
+     * @param horizon     time for which a key is remembered after it was first seen
+     * @param generations number of generations the horizon is split into
+     */
+    KeyGenerations(KeyExtractor keyExtractor, long horizon, int generations) {
+        this.keyExtractor = keyExtractor;
+        if (horizon > 0) {
+            this.generationTime = (horizon + generations - 1) / generations;
+            // one more than the horizon needs, as the current generation is only partly elapsed
+            this.generations = new KeyHashTable[generations + 1];
+        } else {
+            this.generationTime = 0;
+            this.generations = new KeyHashTable[1];
+        }
+        for (int i = 0; i < this.generations.length; i++) {
+            this.generations[i] = new KeyHashTable(keyExtractor);
+        }
+    }
+
+    boolean isBounded() {
+        return generationTime > 0;
+    }
+
+    /**
+     * Moves the current generation to the one covering the given time, dropping the generations that fall out of
+     * the horizon.
+     */
+    void advance(long time) {
+        if (generationTime <= 0) {
+            return;
+        }
+        long slot = Math.floorDiv(time, generationTime);
+        if (currentSlot == Long.MIN_VALUE) {
+            currentSlot = slot;
+            return;
+        }
+        if (slot <= currentSlot) {
+            return;
+        }
+        long steps = Math.min(slot - currentSlot, generations.length);
+        for (long i = 0; i < steps; i++) {
+            current = (current + 1) % generations.length;
+            generations[current] = new KeyHashTable(keyExtractor);
+        }
+        currentSlot = slot;
+    }
+
+    /**
+     * Adds a copy of the event to the current generation unless its key is in any generation.
+     *
+     * @return the copy that was added, or null if the key was already seen
+     */
+    StreamEvent copyIfAbsent(StreamEvent event, StreamEventCloner streamEventCloner) {
+        long hash = keyExtractor.hash(event);
+        for (int i = 1; i < generations.length; i++) {
+            if (generation(i - 1).get(hash, event) != null) {
+                return null;
+            }
+        }
+        return generations[current].copyIfAbsent(hash, event, streamEventCloner);
+    }
+
+    /**
+     * Adds an event to the current generation unless its key is in any generation.
+     */
+    void putIfAbsent(StreamEvent event) {
+        long hash = keyExtractor.hash(event);
+        for (int i = 1; i < generations.length; i++) {
+            if (generation(i - 1).get(hash, event) != null) {
+                return;
+            }
+        }
+        generations[current].putIfAbsent(event);
+    }
+
+    /**
+     * @return live view of the events of all the generations, the oldest generation first
+     */
+    Collection<StreamEvent> values() {
+        return values;
+    }
+
+    List<StreamEvent> toList() {
+        return new ArrayList<StreamEvent>(values);
+    }
+
+    /**
+     * @return events of each generation, the oldest generation first
+     */
+    List<List<StreamEvent>> generationLists() {
+        List<List<StreamEvent>> lists = new ArrayList<List<StreamEvent>>(generations.length);
+        for (int i = 0; i < generations.length; i++) {
+            lists.add(generation(i).toList());
+        }
+        return lists;
+    }
+
+    long currentSlot() {
+        return currentSlot;
+    }
+
+    /**
+     * Restores the generations in place, as compiled conditions refer to the view of the events.
+     */
+    void restore(List<List<StreamEvent>> lists, long slot) {
+        clear();
+        currentSlot = slot;
+        int offset = generations.length - lists.size();
+        for (int i = 0; i < lists.size(); i++) {
+            if (i + offset < 0) {
+                continue;
+            }
+            KeyHashTable generation = generation(i + offset);
+            for (StreamEvent event : lists.get(i)) {
+                generation.putIfAbsent(event);
+            }
+        }
+    }
+
+    void clear() {
+        for (KeyHashTable generation : generations) {
+            generation.clear();
+        }
+        currentSlot = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return the generation at the given age order, 0 being the oldest and the last being the current one
+     */
+    private KeyHashTable generation(int index) {
+        return generations[(current + 1 + index) % generations.length];
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Events held by their unique key in a flat open addressing table of 64 bit key hashes and event references. Events
+ * are probed with the hash computed straight from their attribute values, and keys are only compared attribute by
+ * attribute when the hashes match, so that no key object is created to look up or add an event.
+ */
+final class KeyHashTable {
+
+    private final KeyExtractor keyExtractor;
+    private long[] hashes;
+    private StreamEvent[] events;
+    private int size;
+    private final Collection<StreamEvent> values = new AbstractCollection<StreamEvent>() {
+        @Override
+        public Iterator<StreamEvent> iterator() {
+            return new Iterator<StreamEvent>() {
+                private final StreamEvent[] iteratedEvents = events;
+                private int nextPosition = advance(0);
+
+                private int advance(int position) {
+                    while (position < iteratedEvents.length && iteratedEvents[position] == null) {
+                        position++;
+                    }
+                    return position;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return nextPosition < iteratedEvents.length;
+                }
+
+                @Override
+                public StreamEvent next() {
+                    if (nextPosition >= iteratedEvents.length) {
+                        throw new NoSuchElementException();
+                    }
+                    StreamEvent event = iteratedEvents[nextPosition];
+                    nextPosition = advance(nextPosition + 1);
+                    return event;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    KeyHashTable(KeyExtractor keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        allocate(16);
+    }
+
+    /**
+     * @return the event with the same unique key as the given event, or null
+     */
+    StreamEvent get(StreamEvent event) {
+        return get(keyExtractor.hash(event), event);
+    }
+
+    /**
+     * @return the event with the same unique key as the given event, whose key hash is already known, or null
+     */
+    StreamEvent get(long hash, StreamEvent event) {
+        return events[position(hash, event)];
+    }
+
+    /**
+     * Looks up an event by the value of its unique key, for windows keyed by a single attribute, whose events are
+     * hashed from that value alone.
+     *
+     * @return the event with the given unique key, or null
+     */
+    StreamEvent getByKey(Object key) {
+        long hash = HyperLogLog.hash(key);
+        int mask = events.length - 1;
+        for (int position = (int) (hash ^ (hash >>> 32)) & mask; events[position] != null;
+             position = (position + 1) & mask) {
+            if (hashes[position] == hash && Objects.equals(keyExtractor.extract(events[position]), key)) {
+                return events[position];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the event of its unique key.
+     *
+     * @return the previous event of the key, or null
+     */
+    StreamEvent put(StreamEvent event) {
+        long hash = keyExtractor.hash(event);
+        int position = position(hash, event);
+        StreamEvent oldEvent = events[position];
+        if (oldEvent == null) {
+            add(position, hash, event);
+        } else {
+            events[position] = event;
+        }
+        return oldEvent;
+    }
+
+    /**
+     * Sets the event of its unique key unless the key already has one.
+     *
+     * @return the event the key already had, or null if the given event was set
+     */
+    StreamEvent putIfAbsent(StreamEvent event) {
+        long hash = keyExtractor.hash(event);
+        int position = position(hash, event);
+        StreamEvent oldEvent = events[position];
+        if (oldEvent == null) {
+            add(position, hash, event);
+        }
+        return oldEvent;
+    }
+
+    /**
+     * Sets a copy of the event for its unique key unless the key already has an event. The key is probed with the
+     * given event, so the copy is only made for a key seen for the first time.
+     *
+     * @return the copy that was set, or null if the key already had an event
+     */
+    StreamEvent copyIfAbsent(StreamEvent event, StreamEventCloner streamEventCloner) {
+        return copyIfAbsent(keyExtractor.hash(event), event, streamEventCloner);
+    }
+
+    StreamEvent copyIfAbsent(long hash, StreamEvent event, StreamEventCloner streamEventCloner) {
+        int position = position(hash, event);
+        if (events[position] != null) {
+            return null;
+        }
+        StreamEvent copy = streamEventCloner.copyStreamEvent(event);
+        add(position, hash, copy);
+        return copy;
+    }
+
+    /**
+     * @return live view of the events
+     */
+    Collection<StreamEvent> values() {
+        return values;
+    }
+
+    List<StreamEvent> toList() {
+        return new ArrayList<StreamEvent>(values);
+    }
+
+    void clear() {
+        Arrays.fill(events, null);
+        size = 0;
+    }
+
+    /**
+     * Finds the position holding the event with the same unique key, or the empty position where it should be added.
+     */
+    private int position(long hash, StreamEvent event) {
+        int mask = events.length - 1;
+        int position = (int) (hash ^ (hash >>> 32)) & mask;
+        while (events[position] != null
+                && (hashes[position] != hash || !keyExtractor.sameKey(events[position], event))) {
+            position = (position + 1) & mask;
+        }
+        return position;
+    }
+
+    private void add(int position, long hash, StreamEvent event) {
+        hashes[position] = hash;
+        events[position] = event;
+        if (++size << 1 > events.length) {
+            long[] oldHashes = hashes;
+            StreamEvent[] oldEvents = events;
+            allocate(events.length << 1);
+            int mask = events.length - 1;
+            for (int i = 0; i < oldEvents.length; i++) {
+                if (oldEvents[i] != null) {
+                    int newPosition = (int) (oldHashes[i] ^ (oldHashes[i] >>> 32)) & mask;
+                    while (events[newPosition] != null) {
+                        newPosition = (newPosition + 1) & mask;
+                    }
+                    hashes[newPosition] = oldHashes[i];
+                    events[newPosition] = oldEvents[i];
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        events = new StreamEvent[capacity];
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.state.StateEvent;
+import org.wso2.siddhi.core.event.stream.MetaStreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
+import org.wso2.siddhi.core.table.Table;
+import org.wso2.siddhi.core.util.SiddhiConstants;
+import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
+import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import org.wso2.siddhi.core.util.collection.operator.Operator;
+import org.wso2.siddhi.core.util.parser.ExpressionParser;
+import org.wso2.siddhi.core.util.parser.OperatorParser;
+import org.wso2.siddhi.query.api.definition.AbstractDefinition;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.expression.Expression;
+import org.wso2.siddhi.query.api.expression.Variable;
+import org.wso2.siddhi.query.api.expression.condition.And;
+import org.wso2.siddhi.query.api.expression.condition.Compare;
+import org.wso2.siddhi.query.api.expression.constant.Constant;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A condition pinning the unique key of a window, compiled so that the window looks up the event of the key instead
+ * of scanning all its events. The condition qualifies when it compares the unique key attribute for equality with a
+ * constant or with an attribute of the matching stream, on its own or and-ed with other conditions, as in on-demand
+ * queries fetching the event of a key from a named window, or in joins on the unique key. The event found is checked
+ * against the whole condition, so the other conditions apply just as with a scan.
+ */
+final class KeyLookup implements CompiledCondition {
+
+    private final ExpressionExecutor keyExecutor;
+    private final Operator operator;
+
+    private KeyLookup(ExpressionExecutor keyExecutor, Operator operator) {
+        this.keyExecutor = keyExecutor;
+        this.operator = operator;
+    }
+
+    /**
+     * Compiles a condition on the events of a window.
+     *
+     * @param uniqueKeyExecutors executors of the unique key of the window
+     * @param events             view of the events of the window, scanned when the condition does not pin the key
+     * @return a key lookup when the window is keyed by a single attribute that the condition pins, otherwise an
+     * operator scanning the events
+     */
+    static CompiledCondition compile(ExpressionExecutor[] uniqueKeyExecutors, Collection<StreamEvent> events,
+                                     Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                     SiddhiAppContext siddhiAppContext,
+                                     List<VariableExpressionExecutor> variableExpressionExecutors,
+                                     Map<String, Table> tableMap, String queryName) {
+        Operator operator = OperatorParser.constructOperator(events, expression, matchingMetaInfoHolder,
+                siddhiAppContext, variableExpressionExecutors, tableMap, queryName);
+        if (uniqueKeyExecutors.length != 1 || !(uniqueKeyExecutors[0] instanceof VariableExpressionExecutor)) {
+            return operator;
+        }
+        Attribute keyAttribute = ((VariableExpressionExecutor) uniqueKeyExecutors[0]).getAttribute();
+        Expression keyExpression = keyExpression(expression, keyAttribute.getName(), matchingMetaInfoHolder);
+        if (keyExpression == null) {
+            return operator;
+        }
+        ExpressionExecutor keyExecutor = ExpressionParser.parseExpression(keyExpression,
+                matchingMetaInfoHolder.getMetaStateEvent(), SiddhiConstants.UNKNOWN_STATE, tableMap,
+                variableExpressionExecutors, siddhiAppContext, false,
+                matchingMetaInfoHolder.getDefaultStreamEventIndex(), queryName);
+        if (keyExecutor.getReturnType() != keyAttribute.getType()) {
+            // keys of other types would never equal those of the window, though the comparison may convert them
+            return operator;
+        }
+        return new KeyLookup(keyExecutor, operator);
+    }
+
+    /**
+     * @return the unique key pinned by the condition for the matching event
+     */
+    Object key(StateEvent matchingEvent) {
+        return keyExecutor.execute(matchingEvent);
+    }
+
+    /**
+     * @param event event of the window having the key pinned for the matching event, or null
+     * @return copy of the event if it meets the whole condition, or null
+     */
+    StreamEvent find(StateEvent matchingEvent, StreamEvent event, StreamEventCloner streamEventCloner) {
+        if (event == null) {
+            return null;
+        }
+        return operator.find(matchingEvent, Collections.singletonList(event), streamEventCloner);
+    }
+
+    @Override
+    public CompiledCondition cloneCompilation(String key) {
+        return new KeyLookup(keyExecutor.cloneExecutor(key), (Operator) operator.cloneCompilation(key));
+    }
+
+    /**
+     * @return the expression the unique key attribute is compared to for equality, or null if the condition does
+     * not pin the key
+     */
+    private static Expression keyExpression(Expression expression, String keyAttributeName,
+                                            MatchingMetaInfoHolder matchingMetaInfoHolder) {
+        if (expression instanceof And) {
+            Expression keyExpression = keyExpression(((And) expression).getLeftExpression(), keyAttributeName,
+                    matchingMetaInfoHolder);
+            if (keyExpression != null) {
+                return keyExpression;
+            }
+            return keyExpression(((And) expression).getRightExpression(), keyAttributeName, matchingMetaInfoHolder);
+        }
+        if (expression instanceof Compare && ((Compare) expression).getOperator() == Compare.Operator.EQUAL) {
+            Expression left = ((Compare) expression).getLeftExpression();
+            Expression right = ((Compare) expression).getRightExpression();
+            if (isKeyAttribute(left, keyAttributeName, matchingMetaInfoHolder)
+                    && isMatchingValue(right, matchingMetaInfoHolder)) {
+                return right;
+            }
+            if (isKeyAttribute(right, keyAttributeName, matchingMetaInfoHolder)
+                    && isMatchingValue(left, matchingMetaInfoHolder)) {
+                return left;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isKeyAttribute(Expression expression, String keyAttributeName,
+                                          MatchingMetaInfoHolder matchingMetaInfoHolder) {
+        return expression instanceof Variable && ((Variable) expression).getAttributeName().equals(keyAttributeName)
+                && isWindowAttribute((Variable) expression, matchingMetaInfoHolder);
+    }
+
+    /**
+     * @return whether the expression only depends on the matching event
+     */
+    private static boolean isMatchingValue(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder) {
+        if (expression instanceof Constant) {
+            return true;
+        }
+        if (!(expression instanceof Variable) || matchingMetaInfoHolder.getMatchingStreamEventIndex() < 0) {
+            return false;
+        }
+        Variable variable = (Variable) expression;
+        if (variable.getStreamId() == null) {
+            return hasAttribute(matchingMetaInfoHolder.getMatchingStreamDefinition(), variable.getAttributeName())
+                    && !hasAttribute(matchingMetaInfoHolder.getStoreDefinition(), variable.getAttributeName());
+        }
+        return !isWindowAttribute(variable, matchingMetaInfoHolder);
+    }
+
+    private static boolean isWindowAttribute(Variable variable, MatchingMetaInfoHolder matchingMetaInfoHolder) {
+        if (matchingMetaInfoHolder.getMatchingStreamEventIndex() < 0) {
+            // on-demand queries have no matching stream
+            return true;
+        }
+        if (variable.getStreamId() == null) {
+            return hasAttribute(matchingMetaInfoHolder.getStoreDefinition(), variable.getAttributeName())
+                    && !hasAttribute(matchingMetaInfoHolder.getMatchingStreamDefinition(),
+                    variable.getAttributeName());
+        }
+        MetaStreamEvent windowStreamEvent = matchingMetaInfoHolder.getMetaStateEvent()
+                .getMetaStreamEvent(matchingMetaInfoHolder.getStoreEventIndex());
+        return variable.getStreamId().equals(windowStreamEvent.getInputReferenceId())
+                || variable.getStreamId().equals(matchingMetaInfoHolder.getStoreDefinition().getId());
+    }
+
+    private static boolean hasAttribute(AbstractDefinition definition, String attributeName) {
+        return definition != null && Arrays.asList(definition.getAttributeNameArray()).contains(attributeName);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Prepares a flushed batch for emission: stamps the events with the flush time, links them into a chain and, when
+ * the window keeps them, makes the expired copies that are emitted at the next flush. Large batches are split into
+ * fixed size segments that are processed on the common fork join pool, and the segment chains are stitched together
+ * afterwards.
+ * <p>
+ * The copies are made without the pooled {@link org.wso2.siddhi.core.event.stream.StreamEventCloner}, as its pool
+ * is not thread safe and the batch is prepared outside the lock of the window.
+ */
+final class ParallelBatchBuilder {
+
+    private static final int SEGMENT_SIZE = 8192;
+
+    private ParallelBatchBuilder() {
+    }
+
+    /**
+     * @param events            events of the batch, linked in array order when this returns
+     * @param flushTime         time stamp of the flushed events
+     * @param parallelThreshold minimum number of events for the batch to be prepared in parallel
+     * @param copyExpired       whether to make the expired copies of the events
+     * @return expired copies of the events, linked in array order, or no events if they are not copied
+     */
+    static StreamEvent[] build(StreamEvent[] events, long flushTime, int parallelThreshold, boolean copyExpired) {
+        StreamEvent[] expiredEvents = copyExpired ? new StreamEvent[events.length] : null;
+        if (events.length < parallelThreshold) {
+            buildSegment(events, expiredEvents, flushTime, 0, events.length);
+        } else {
+            int segmentCount = (events.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+            ForkJoinPool.commonPool().invoke(new SegmentAction(events, expiredEvents, flushTime, 0, segmentCount));
+            for (int i = SEGMENT_SIZE; i < events.length; i += SEGMENT_SIZE) {
+                events[i - 1].setNext(events[i]);
+                if (expiredEvents != null) {
+                    expiredEvents[i - 1].setNext(expiredEvents[i]);
+                }
+            }
+        }
+        return expiredEvents != null ? expiredEvents : new StreamEvent[0];
+    }
+
+    /**
+     * Copies an event, including its data, into a new event of the given type.
+     */
+    static StreamEvent copy(StreamEvent event, ComplexEvent.Type type) {
+        StreamEvent copy = new StreamEvent(0, 0, 0);
+        copy.setTimestamp(event.getTimestamp());
+        copy.setType(type);
+        if (event.getBeforeWindowData() != null) {
+            copy.setBeforeWindowData(event.getBeforeWindowData().clone());
+        }
+        if (event.getOnAfterWindowData() != null) {
+            copy.setOnAfterWindowData(event.getOnAfterWindowData().clone());
+        }
+        if (event.getOutputData() != null) {
+            copy.setOutputData(event.getOutputData().clone());
+        }
+        return copy;
+    }
+
+    private static void buildSegment(StreamEvent[] events, StreamEvent[] expiredEvents, long flushTime,
+                                     int from, int to) {
+        for (int i = from; i < to; i++) {
+            StreamEvent event = events[i];
+            event.setTimestamp(flushTime);
+            event.setNext(null);
+            if (i > from) {
+                events[i - 1].setNext(event);
+            }
+            if (expiredEvents != null) {
+                StreamEvent expiredEvent = copy(event, ComplexEvent.Type.EXPIRED);
+                expiredEvents[i] = expiredEvent;
+                if (i > from) {
+                    expiredEvents[i - 1].setNext(expiredEvent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the segments in the given range, splitting the range in halves down to single segments.
+     */
+    private static final class SegmentAction extends RecursiveAction {
+
+        private static final long serialVersionUID = -2817016474457317046L;
+
+        private final StreamEvent[] events;
+        private final StreamEvent[] expiredEvents;
+        private final long flushTime;
+        private final int fromSegment;
+        private final int toSegment;
+
+        SegmentAction(StreamEvent[] events, StreamEvent[] expiredEvents, long flushTime, int fromSegment,
+                      int toSegment) {
+            this.events = events;
+            this.expiredEvents = expiredEvents;
+            this.flushTime = flushTime;
+            this.fromSegment = fromSegment;
+            this.toSegment = toSegment;
+        }
+
+        @Override
+        protected void compute() {
+            if (toSegment - fromSegment == 1) {
+                buildSegment(events, expiredEvents, flushTime, fromSegment * SEGMENT_SIZE,
+                        Math.min((fromSegment + 1) * SEGMENT_SIZE, events.length));
+            } else {
+                int middleSegment = (fromSegment + toSegment) >>> 1;
+                invokeAll(new SegmentAction(events, expiredEvents, flushTime, fromSegment, middleSegment),
+                        new SegmentAction(events, expiredEvents, flushTime, middleSegment, toSegment));
+            }
+        }
+    }
+}
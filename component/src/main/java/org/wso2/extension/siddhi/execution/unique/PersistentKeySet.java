@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Set of unique keys kept on local disk, so that it can outgrow the heap and outlive the process.
+ * <p>
+ * Keys are appended to a log file as length prefixed records, and indexed by an open addressing hash table of
+ * 64 bit key hashes and log offsets in a memory mapped file, so that only the pages of the table that are probed are
+ * read. In front of the disk there is a Bloom filter of the key hashes, which answers most lookups of new keys, and
+ * a cache of recently seen keys, which answers most lookups of repeated keys.
+ * <p>
+ * The index records the length of the log it covers, so records appended after it was last updated are indexed
+ * again when the set is opened, and a partly written record is dropped. The set can be rolled back to an earlier
+ * length of the log, to forget keys that were added after a snapshot of the Siddhi app.
+ */
+final class PersistentKeySet implements Closeable {
+
+    private static final int MAGIC = 0x554b5331;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final String LOG_FILE = "keys.log";
+    private static final String INDEX_FILE = "keys.index";
+    private static final String NEW_INDEX_FILE = "keys.index.new";
+
+    private final Path indexPath;
+    private final Path newIndexPath;
+    private final FileChannel log;
+    private final FileLock lock;
+    private final int expectedKeys;
+    private final Map<ByteBuffer, Boolean> recentKeys;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+    private long logLength;
+    private BloomFilter bloomFilter;
+
+    /**
+     * @param directory    directory holding the files of the set, created if it does not exist
+     * @param expectedKeys number of keys the Bloom filter is sized for at first
+     * @param cacheSize    number of recently seen keys kept on heap
+     */
+    PersistentKeySet(File directory, int expectedKeys, final int cacheSize) throws IOException {
+        Files.createDirectories(directory.toPath());
+        this.indexPath = new File(directory, INDEX_FILE).toPath();
+        this.newIndexPath = new File(directory, NEW_INDEX_FILE).toPath();
+        this.expectedKeys = expectedKeys;
+        this.log = FileChannel.open(new File(directory, LOG_FILE).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = log.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // the lock is held by another window of this process
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            log.close();
+            throw new IOException("Unique keys at " + directory + " are used by another window or process");
+        }
+        this.lock = fileLock;
+        this.recentKeys = new LinkedHashMap<ByteBuffer, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        if (!openIndex()) {
+            newIndex(MIN_CAPACITY);
+        }
+        indexLog();
+        fillBloomFilter();
+    }
+
+    /**
+     * Adds a key unless the set already has it.
+     *
+     * @return true if the key was added, false if the set already had it
+     */
+    boolean add(byte[] key) throws IOException {
+        ByteBuffer recentKey = ByteBuffer.wrap(key);
+        if (recentKeys.get(recentKey) != null) {
+            return false;
+        }
+        long hash = hash(key);
+        if (bloomFilter.mightContain(hash) && contains(hash, key)) {
+            recentKeys.put(recentKey, Boolean.TRUE);
+            return false;
+        }
+        ByteBuffer record = ByteBuffer.allocate(4 + key.length);
+        record.putInt(key.length).put(key).flip();
+        long offset = logLength;
+        write(record, offset);
+        logLength = offset + 4 + key.length;
+        insert(hash, offset);
+        recentKeys.put(recentKey, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * @return length of the log, which identifies the keys added so far
+     */
+    long logLength() {
+        return logLength;
+    }
+
+    /**
+     * Forgets the keys added after the log had the given length.
+     */
+    void rollback(long length) throws IOException {
+        if (length >= logLength) {
+            return;
+        }
+        log.truncate(length);
+        recentKeys.clear();
+        newIndex(MIN_CAPACITY);
+        indexLog();
+        fillBloomFilter();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            index.force();
+            log.force(true);
+        } finally {
+            lock.release();
+            log.close();
+        }
+    }
+
+    /**
+     * Encodes the values of a key in a form that is stable across restarts.
+     */
+    static byte[] encode(Object... values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (Object value : values) {
+                if (value == null) {
+                    out.writeByte(0);
+                } else if (value instanceof Integer) {
+                    out.writeByte(1);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Long) {
+                    out.writeByte(2);
+                    out.writeLong((Long) value);
+                } else if (value instanceof Float) {
+                    out.writeByte(3);
+                    out.writeFloat((Float) value);
+                } else if (value instanceof Double) {
+                    out.writeByte(4);
+                    out.writeDouble((Double) value);
+                } else if (value instanceof Boolean) {
+                    out.writeByte(5);
+                    out.writeBoolean((Boolean) value);
+                } else {
+                    byte[] string = value.toString().getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(value instanceof String ? 6 : 7);
+                    out.writeInt(string.length);
+                    out.write(string);
+                }
+            }
+        } catch (IOException e) {
+            // not thrown by a byte array stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key with a final avalanche, never 0 as 0 marks an empty slot.
+     */
+    static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private boolean contains(long hash, byte[] key) throws IOException {
+        int mask = capacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        long slotHash;
+        while ((slotHash = index.getLong(slotPosition(slot))) != 0) {
+            if (slotHash == hash && keyEquals(index.getLong(slotPosition(slot) + 8), key)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private boolean keyEquals(long offset, byte[] key) throws IOException {
+        if (readLength(offset) != key.length) {
+            return false;
+        }
+        ByteBuffer storedKey = ByteBuffer.allocate(key.length);
+        read(storedKey, offset + 4);
+        return Arrays.equals(storedKey.array(), key);
+    }
+
+    private void insert(long hash, long offset) throws IOException {
+        if ((size + 1) << 1 > capacity) {
+            grow();
+        }
+        putSlot(index, capacity, hash, offset);
+        size++;
+        index.putInt(12, size);
+        index.putLong(16, logLength);
+        bloomFilter.add(hash);
+        if (size > bloomFilter.expectedKeys) {
+            fillBloomFilter();
+        }
+    }
+
+    private static void putSlot(MappedByteBuffer index, int capacity, long hash, long offset) {
+        int mask = capacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (index.getLong(slotPosition(slot)) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(slotPosition(slot), hash);
+        index.putLong(slotPosition(slot) + 8, offset);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void grow() throws IOException {
+        if (capacity == MAX_CAPACITY) {
+            throw new IOException("Unique key index is full with " + size + " keys");
+        }
+        MappedByteBuffer oldIndex = index;
+        int oldCapacity = capacity;
+        MappedByteBuffer newIndex = mapNewIndex(oldCapacity << 1);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long hash = oldIndex.getLong(slotPosition(slot));
+            if (hash != 0) {
+                putSlot(newIndex, oldCapacity << 1, hash, oldIndex.getLong(slotPosition(slot) + 8));
+            }
+        }
+        newIndex.putInt(12, size);
+        newIndex.putLong(16, logLength);
+        newIndex.force();
+        Files.move(newIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index = newIndex;
+        capacity = oldCapacity << 1;
+    }
+
+    /**
+     * Maps the existing index, unless it is missing or does not match the log.
+     */
+    private boolean openIndex() throws IOException {
+        if (!Files.exists(indexPath) || Files.size(indexPath) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mappedIndex = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int mappedCapacity = mappedIndex.getInt(8);
+            if (mappedIndex.getInt(0) != MAGIC || Integer.bitCount(mappedCapacity) != 1
+                    || channel.size() != HEADER_SIZE + (long) mappedCapacity * SLOT_SIZE
+                    || mappedIndex.getLong(16) > log.size()) {
+                return false;
+            }
+            index = mappedIndex;
+            capacity = mappedCapacity;
+            size = mappedIndex.getInt(12);
+            logLength = mappedIndex.getLong(16);
+            return true;
+        }
+    }
+
+    /**
+     * Replaces the index with an empty one, which covers none of the log.
+     */
+    private void newIndex(int newCapacity) throws IOException {
+        index = mapNewIndex(newCapacity);
+        Files.move(newIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        capacity = newCapacity;
+        size = 0;
+        logLength = 0;
+    }
+
+    private MappedByteBuffer mapNewIndex(int newCapacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(newIndexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mappedIndex = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+            mappedIndex.putInt(0, MAGIC);
+            mappedIndex.putInt(8, newCapacity);
+            return mappedIndex;
+        }
+    }
+
+    /**
+     * Indexes the records of the log the index does not cover yet, dropping a partly written last record.
+     */
+    private void indexLog() throws IOException {
+        long logSize = log.size();
+        while (logLength < logSize) {
+            int length = logLength + 4 <= logSize ? readLength(logLength) : -1;
+            if (length < 0 || logLength + 4 + length > logSize) {
+                log.truncate(logLength);
+                break;
+            }
+            ByteBuffer key = ByteBuffer.allocate(length);
+            read(key, logLength + 4);
+            long offset = logLength;
+            logLength += 4 + length;
+            if ((size + 1) << 1 > capacity) {
+                grow();
+            }
+            putSlot(index, capacity, hash(key.array()), offset);
+            size++;
+        }
+        index.putInt(12, size);
+        index.putLong(16, logLength);
+    }
+
+    private void fillBloomFilter() {
+        bloomFilter = new BloomFilter(Math.max(expectedKeys, size << 1));
+        for (int slot = 0; slot < capacity; slot++) {
+            long hash = index.getLong(slotPosition(slot));
+            if (hash != 0) {
+                bloomFilter.add(hash);
+            }
+        }
+    }
+
+    private int readLength(long offset) throws IOException {
+        lengthBuffer.clear();
+        read(lengthBuffer, offset);
+        return lengthBuffer.getInt(0);
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of unique key log at " + position);
+            }
+            position += read;
+        }
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+    }
+
+    /**
+     * Bloom filter over the 64 bit key hashes, for a false positive rate of about 1% up to the expected keys.
+     */
+    private static final class BloomFilter {
+        private static final int HASHES = 7;
+
+        private final long[] words;
+        private final long bits;
+        private final int expectedKeys;
+
+        BloomFilter(int expectedKeys) {
+            this.expectedKeys = expectedKeys;
+            long wordCount = Math.max(1, ((long) expectedKeys * 10 + 63) >>> 6);
+            this.words = new long[(int) Math.min(wordCount, Integer.MAX_VALUE - 8)];
+            this.bits = (long) words.length << 6;
+        }
+
+        void add(long hash) {
+            long combined = hash;
+            long step = (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = (combined & Long.MAX_VALUE) % bits;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+                combined += step;
+            }
+        }
+
+        boolean mightContain(long hash) {
+            long combined = hash;
+            long step = (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = (combined & Long.MAX_VALUE) % bits;
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+                combined += step;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pre-allocated multi producer, single consumer ring buffer in front of a window. Producers claim a sequence with a
+ * compare and set, store their event in its slot and publish the sequence. A single owner thread hands the
+ * published events to the window in batches, so producers never contend on the window itself.
+ */
+final class RingBufferIntake {
+
+    private static final Logger log = Logger.getLogger(RingBufferIntake.class);
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+
+    /**
+     * How the owner thread waits for events, and a blocked producer for free slots.
+     */
+    enum WaitStrategy {
+        BUSY_SPIN, YIELDING, SLEEPING
+    }
+
+    /**
+     * What a producer does when the ring is full.
+     */
+    enum Backpressure {
+        BLOCK, DROP
+    }
+
+    /**
+     * Receives the events taken off the ring, on the owner thread.
+     */
+    interface Handler {
+        void onEvents(ComplexEventChunk<StreamEvent> streamEventChunk);
+    }
+
+    private final StreamEvent[] slots;
+    private final AtomicLongArray publishedSequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final Backpressure backpressure;
+    private final Handler handler;
+    private final AtomicLong claimedSequence = new AtomicLong(-1);
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private volatile long consumedSequence = -1;
+    private volatile boolean running;
+
+    RingBufferIntake(int size, WaitStrategy waitStrategy, Backpressure backpressure, Handler handler) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new SiddhiAppValidationException("Ring buffer size should be a positive power of two, but found "
+                    + size);
+        }
+        this.slots = new StreamEvent[size];
+        this.publishedSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            publishedSequences.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.backpressure = backpressure;
+        this.handler = handler;
+    }
+
+    /**
+     * Publishes an event, waiting for a free slot or dropping the event when the ring is full, as configured. An
+     * event that finds the ring full after the owner thread has stopped is always dropped.
+     *
+     * @param streamEvent event owned by the ring from now on
+     * @return false if the event has been dropped
+     */
+    boolean publish(StreamEvent streamEvent) {
+        long sequence;
+        int tries = 0;
+        while (true) {
+            long claimed = claimedSequence.get();
+            sequence = claimed + 1;
+            if (sequence - slots.length > consumedSequence) {
+                // nothing frees a slot once the owner thread has stopped, so a blocked producer gives up too
+                if (backpressure == Backpressure.DROP || !running) {
+                    droppedEvents.incrementAndGet();
+                    return false;
+                }
+                tries = idle(tries);
+            } else if (claimedSequence.compareAndSet(claimed, sequence)) {
+                break;
+            }
+        }
+        int index = (int) (sequence & mask);
+        slots[index] = streamEvent;
+        publishedSequences.lazySet(index, sequence);
+        return true;
+    }
+
+    void start(ExecutorService executorService) {
+        running = true;
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    consume();
+                } finally {
+                    running = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the owner thread once it has handed over the events already published.
+     */
+    void stop() {
+        running = false;
+    }
+
+    private void consume() {
+        int tries = 0;
+        while (true) {
+            long sequence = consumedSequence + 1;
+            StreamEvent first = null;
+            StreamEvent last = null;
+            int count = 0;
+            while (count < MAX_BATCH_SIZE && publishedSequences.get((int) (sequence & mask)) == sequence) {
+                int index = (int) (sequence & mask);
+                StreamEvent streamEvent = slots[index];
+                slots[index] = null;
+                streamEvent.setNext(null);
+                if (first == null) {
+                    first = streamEvent;
+                } else {
+                    last.setNext(streamEvent);
+                }
+                last = streamEvent;
+                sequence++;
+                count++;
+            }
+            if (count == 0) {
+                if (!running) {
+                    return;
+                }
+                tries = idle(tries);
+                continue;
+            }
+            tries = 0;
+            // the slots are free again as soon as their events are taken
+            consumedSequence = sequence - 1;
+            try {
+                handler.onEvents(new ComplexEventChunk<StreamEvent>(first, last, false));
+            } catch (RuntimeException e) {
+                log.error("Error while processing events taken off the ring buffer, " + count
+                        + " events are discarded.", e);
+            }
+        }
+    }
+
+    private int idle(int tries) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            default:
+                if (tries < SPIN_TRIES) {
+                    break;
+                } else if (tries < YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(100000L);
+                }
+        }
+        return tries + 1;
+    }
+
+    int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return number of events published but not yet taken by the owner thread
+     */
+    long getOccupancy() {
+        return claimedSequence.get() - consumedSequence;
+    }
+
+    long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+}
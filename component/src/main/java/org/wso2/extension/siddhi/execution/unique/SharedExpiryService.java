@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.query.input.stream.single.EntryValveProcessor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiry service shared by all the unique windows of the JVM that opt in through the sharedExpiry system parameter,
+ * in place of a Siddhi scheduler per window. The deadlines of all the windows are kept on one hashed timing wheel
+ * driven by a single daemon thread. At every tick the due deadlines are grouped by window, and each window gets one
+ * TIMER event for the latest of its due deadlines, processed on the executor of its Siddhi app.
+ * <p>
+ * The wheel runs on the system clock, so windows of Siddhi apps in playback mode keep their Siddhi scheduler.
+ */
+final class SharedExpiryService {
+
+    static final String SHARED_EXPIRY = "sharedExpiry";
+
+    private static final Logger log = Logger.getLogger(SharedExpiryService.class);
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 512;
+    private static final SharedExpiryService INSTANCE = new SharedExpiryService();
+
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    @SuppressWarnings("unchecked")
+    private final List<Timeout>[] wheel = new List[WHEEL_SIZE];
+    private final long startTime = System.currentTimeMillis();
+    private long tick;
+    private Thread workerThread;
+
+    private SharedExpiryService() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayList<Timeout>();
+        }
+    }
+
+    /**
+     * Registers a window when its configuration asks for the shared expiry service.
+     *
+     * @param configReader     config reader of the window
+     * @param siddhiAppContext context of the Siddhi app of the window
+     * @param window           window the TIMER events are sent to
+     * @return the registration to notify deadlines through, or null if the window should keep its Siddhi scheduler
+     */
+    static Registration register(ConfigReader configReader, SiddhiAppContext siddhiAppContext, Processor window) {
+        if (!Boolean.parseBoolean(configReader.readConfig(SHARED_EXPIRY, "false")) || siddhiAppContext.isPlayback()) {
+            return null;
+        }
+        INSTANCE.ensureStarted();
+        EntryValveProcessor entryValveProcessor = new EntryValveProcessor(siddhiAppContext);
+        entryValveProcessor.setToLast(window);
+        return new Registration(entryValveProcessor, siddhiAppContext);
+    }
+
+    private synchronized void ensureStarted() {
+        if (workerThread == null) {
+            workerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, "unique-shared-expiry");
+            workerThread.setDaemon(true);
+            workerThread.start();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            long tickTime = startTime + (tick + 1) * TICK_MILLIS;
+            long sleepTime = tickTime - System.currentTimeMillis();
+            if (sleepTime > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            transferNewTimeouts();
+            Map<Registration, Long> dueTimes = new HashMap<Registration, Long>();
+            Iterator<Timeout> iterator = wheel[(int) (tick & (WHEEL_SIZE - 1))].iterator();
+            while (iterator.hasNext()) {
+                Timeout timeout = iterator.next();
+                if (timeout.registration.cancelled) {
+                    iterator.remove();
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                } else {
+                    iterator.remove();
+                    Long dueTime = dueTimes.get(timeout.registration);
+                    if (dueTime == null || dueTime < timeout.deadline) {
+                        dueTimes.put(timeout.registration, timeout.deadline);
+                    }
+                }
+            }
+            for (Map.Entry<Registration, Long> entry : dueTimes.entrySet()) {
+                Registration registration = entry.getKey();
+                try {
+                    registration.deliver(entry.getValue());
+                } catch (RuntimeException e) {
+                    // e.g. the executor of a Siddhi app that has been shut down, which must not stop the wheel
+                    log.error("Error while handing a timer event to a unique window of "
+                            + registration.siddhiAppContext.getName() + ", the window gets no more timer events.", e);
+                    registration.cancel();
+                }
+            }
+            tick++;
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            // a deadline already passed goes to the current tick
+            long deadlineTick = Math.max(ticksOf(timeout.deadline), tick);
+            timeout.remainingRounds = (deadlineTick - tick) / WHEEL_SIZE;
+            wheel[(int) (deadlineTick & (WHEEL_SIZE - 1))].add(timeout);
+        }
+    }
+
+    private long ticksOf(long time) {
+        // the tick at the end of which the time has passed
+        return (time - startTime + TICK_MILLIS - 1) / TICK_MILLIS - 1;
+    }
+
+    /**
+     * Registration of a window, to notify its deadlines through.
+     */
+    static final class Registration {
+
+        private final Processor entryValveProcessor;
+        private final SiddhiAppContext siddhiAppContext;
+        private volatile long lastScheduledTick = Long.MIN_VALUE;
+        private volatile boolean cancelled;
+
+        private Registration(Processor entryValveProcessor, SiddhiAppContext siddhiAppContext) {
+            this.entryValveProcessor = entryValveProcessor;
+            this.siddhiAppContext = siddhiAppContext;
+        }
+
+        /**
+         * Asks for a TIMER event at the given time. Deadlines falling into the tick of the latest scheduled one
+         * share its TIMER event.
+         */
+        void notifyAt(long time) {
+            long deadlineTick = INSTANCE.ticksOf(time);
+            if (deadlineTick == lastScheduledTick) {
+                return;
+            }
+            lastScheduledTick = deadlineTick;
+            INSTANCE.newTimeouts.add(new Timeout(this, time));
+        }
+
+        /**
+         * Stops the TIMER events of the window.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        private void deliver(final long time) {
+            siddhiAppContext.getExecutorService().execute(new Runnable() {
+                @Override
+                public void run() {
+                    StreamEvent timerEvent = new StreamEvent(0, 0, 0);
+                    timerEvent.setType(ComplexEvent.Type.TIMER);
+                    timerEvent.setTimestamp(time);
+                    try {
+                        entryValveProcessor.process(new ComplexEventChunk<StreamEvent>(timerEvent, timerEvent,
+                                false));
+                    } catch (RuntimeException e) {
+                        log.error("Error while sending a timer event at " + time + " to a unique window of "
+                                + siddhiAppContext.getName(), e);
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class Timeout {
+
+        private final Registration registration;
+        private final long deadline;
+        private long remainingRounds;
+
+        private Timeout(Registration registration, long deadline) {
+            this.registration = registration;
+            this.deadline = deadline;
+        }
+    }
+}
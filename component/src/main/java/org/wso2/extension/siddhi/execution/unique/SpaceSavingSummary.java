@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving summary that monitors a fixed number of keys and keeps an approximate occurrence count for each.
+ * A key that is not monitored takes over the counter of the least frequent key, so every key occurring in more
+ * than 1/capacity of the offers stays monitored. The counters are kept in an indexed min-heap so that offering
+ * a key and evicting the least frequent key are both O(log capacity).
+ */
+final class SpaceSavingSummary implements Serializable {
+
+    private static final long serialVersionUID = 4519230742305717123L;
+
+    private final int capacity;
+    private final Object[] keys;
+    private final long[] counts;
+    private final Map<Object, Integer> positions;
+    private int size = 0;
+
+    SpaceSavingSummary(int capacity) {
+        this.capacity = capacity;
+        this.keys = new Object[capacity];
+        this.counts = new long[capacity];
+        this.positions = new HashMap<Object, Integer>(capacity * 2);
+    }
+
+    /**
+     * Counts an occurrence of the given key.
+     *
+     * @param key the key that arrived
+     * @return the key that stopped being monitored to make room for the given key, or null if none was evicted
+     */
+    Object offer(Object key) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position]++;
+            siftDown(position);
+            return null;
+        }
+        if (size < capacity) {
+            keys[size] = key;
+            counts[size] = 1;
+            positions.put(key, size);
+            siftUp(size++);
+            return null;
+        }
+        Object evictedKey = keys[0];
+        positions.remove(evictedKey);
+        keys[0] = key;
+        counts[0]++;
+        positions.put(key, 0);
+        siftDown(0);
+        return evictedKey;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Object key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        positions.put(keys[i], i);
+        positions.put(keys[j], j);
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.exception.SiddhiAppRuntimeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Latest event of each unique key, with the recently updated keys on heap and the rest spilled to a local log file.
+ * <p>
+ * The hot tier is a map in access order bounded to a number of keys. When it overflows, its least recently updated
+ * event is appended to the log, and indexed by an open addressing table of 64 bit key hashes and log offsets, so
+ * that a cold key costs 16 bytes of heap. Updating a cold key reads its event back, drops it from the index, and
+ * puts the new event in the hot tier. Records of dropped keys are reclaimed by rewriting the log once they outweigh
+ * the live ones. The view of the events reads the cold events back from the log as it is iterated, without moving
+ * them to the hot tier, so a scan does not evict the working set.
+ */
+final class TieredEventStore implements Closeable {
+
+    private static final long COMPACTION_THRESHOLD = 1 << 20;
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOL = 5;
+    private static final byte STRING = 6;
+    private static final byte OBJECT = 7;
+
+    private final KeyExtractor keyExtractor;
+    private final int hotCapacity;
+    private final File directory;
+    private final LinkedHashMap<Object, StreamEvent> hotEvents = new LinkedHashMap<Object, StreamEvent>(16, 0.75f,
+            true);
+    private long[] coldHashes = new long[16];
+    private long[] coldOffsets = newOffsets(16);
+    private int coldSize;
+    private FileChannel log;
+    private Path logPath;
+    private long logLength;
+    private long deadBytes;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private final Collection<StreamEvent> values = new AbstractCollection<StreamEvent>() {
+        @Override
+        public Iterator<StreamEvent> iterator() {
+            return new Iterator<StreamEvent>() {
+                private final Iterator<StreamEvent> hotIterator = hotEvents.values().iterator();
+                private final long[] iteratedOffsets = coldOffsets;
+                private int nextSlot = advance(0);
+
+                private int advance(int slot) {
+                    while (slot < iteratedOffsets.length && iteratedOffsets[slot] < 0) {
+                        slot++;
+                    }
+                    return slot;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return hotIterator.hasNext() || nextSlot < iteratedOffsets.length;
+                }
+
+                @Override
+                public StreamEvent next() {
+                    if (hotIterator.hasNext()) {
+                        return hotIterator.next();
+                    }
+                    if (nextSlot >= iteratedOffsets.length) {
+                        throw new NoSuchElementException();
+                    }
+                    StreamEvent event = read(iteratedOffsets[nextSlot]);
+                    nextSlot = advance(nextSlot + 1);
+                    return event;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return hotEvents.size() + coldSize;
+        }
+    };
+
+    /**
+     * @param hotCapacity number of keys whose events are kept on heap
+     * @param directory   directory in which the log of cold events is created
+     */
+    TieredEventStore(KeyExtractor keyExtractor, int hotCapacity, File directory) {
+        this.keyExtractor = keyExtractor;
+        this.hotCapacity = hotCapacity;
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the event of its unique key, making the key the most recently updated one.
+     *
+     * @return the previous event of the key, or null
+     */
+    StreamEvent put(StreamEvent event) {
+        StreamEvent oldEvent = hotEvents.put(keyExtractor.extract(event), event);
+        if (oldEvent == null && coldSize > 0) {
+            oldEvent = removeCold(event);
+        }
+        if (hotEvents.size() > hotCapacity) {
+            Iterator<StreamEvent> iterator = hotEvents.values().iterator();
+            StreamEvent eldestEvent = iterator.next();
+            iterator.remove();
+            spill(eldestEvent);
+        }
+        return oldEvent;
+    }
+
+    /**
+     * @return live view of the events, the hot ones first
+     */
+    Collection<StreamEvent> values() {
+        return values;
+    }
+
+    List<StreamEvent> toList() {
+        return new ArrayList<StreamEvent>(values);
+    }
+
+    /**
+     * @return number of events spilled to the log
+     */
+    int coldSize() {
+        return coldSize;
+    }
+
+    void clear() {
+        hotEvents.clear();
+        coldHashes = new long[16];
+        coldOffsets = newOffsets(16);
+        coldSize = 0;
+        logLength = 0;
+        deadBytes = 0;
+        if (log != null) {
+            try {
+                log.truncate(0);
+            } catch (IOException e) {
+                throw new SiddhiAppRuntimeException("Cannot clear the unique event log " + logPath, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    private void spill(StreamEvent event) {
+        long hash = keyExtractor.hash(event);
+        if ((coldSize + 1) << 1 > coldOffsets.length) {
+            resize(coldOffsets.length << 1);
+        }
+        insert(coldHashes, coldOffsets, hash, append(encode(event)));
+        coldSize++;
+    }
+
+    private StreamEvent removeCold(StreamEvent event) {
+        long hash = keyExtractor.hash(event);
+        int mask = coldOffsets.length - 1;
+        for (int slot = home(hash, mask); coldOffsets[slot] >= 0; slot = (slot + 1) & mask) {
+            if (coldHashes[slot] == hash) {
+                StreamEvent coldEvent = read(coldOffsets[slot]);
+                if (keyExtractor.sameKey(coldEvent, event)) {
+                    deadBytes += 4 + readLength(coldOffsets[slot]);
+                    delete(slot);
+                    if (deadBytes > COMPACTION_THRESHOLD && deadBytes > logLength - deadBytes) {
+                        compact();
+                    }
+                    return coldEvent;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Empties a slot, shifting back the entries after it that would no longer be reachable from their home slot.
+     */
+    private void delete(int slot) {
+        int mask = coldOffsets.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; coldOffsets[next] >= 0; next = (next + 1) & mask) {
+            if (((next - home(coldHashes[next], mask)) & mask) >= ((next - hole) & mask)) {
+                coldHashes[hole] = coldHashes[next];
+                coldOffsets[hole] = coldOffsets[next];
+                hole = next;
+            }
+        }
+        coldOffsets[hole] = -1;
+        coldSize--;
+    }
+
+    private void resize(int capacity) {
+        long[] hashes = new long[capacity];
+        long[] offsets = newOffsets(capacity);
+        for (int slot = 0; slot < coldOffsets.length; slot++) {
+            if (coldOffsets[slot] >= 0) {
+                insert(hashes, offsets, coldHashes[slot], coldOffsets[slot]);
+            }
+        }
+        coldHashes = hashes;
+        coldOffsets = offsets;
+    }
+
+    private static void insert(long[] hashes, long[] offsets, long hash, long offset) {
+        int mask = offsets.length - 1;
+        int slot = home(hash, mask);
+        while (offsets[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        offsets[slot] = offset;
+    }
+
+    private static int home(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static long[] newOffsets(int capacity) {
+        long[] offsets = new long[capacity];
+        Arrays.fill(offsets, -1);
+        return offsets;
+    }
+
+    /**
+     * Rewrites the log with the records of the cold keys only.
+     */
+    private void compact() {
+        Path compactedPath = null;
+        try {
+            compactedPath = Files.createTempFile(directory.toPath(), "unique-ever-", ".log");
+            FileChannel compactedLog = FileChannel.open(compactedPath, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            long compactedLength = 0;
+            for (int slot = 0; slot < coldOffsets.length; slot++) {
+                if (coldOffsets[slot] >= 0) {
+                    ByteBuffer record = ByteBuffer.allocate(4 + readLength(coldOffsets[slot]));
+                    read(record, coldOffsets[slot]);
+                    record.flip();
+                    coldOffsets[slot] = compactedLength;
+                    while (record.hasRemaining()) {
+                        compactedLength += compactedLog.write(record, compactedLength);
+                    }
+                }
+            }
+            log.close();
+            log = compactedLog;
+            logPath = compactedPath;
+            logLength = compactedLength;
+            deadBytes = 0;
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Cannot compact the unique event log " + logPath + " into "
+                    + compactedPath, e);
+        }
+    }
+
+    private long append(byte[] record) {
+        try {
+            if (log == null) {
+                Files.createDirectories(directory.toPath());
+                logPath = Files.createTempFile(directory.toPath(), "unique-ever-", ".log");
+                log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            long offset = logLength;
+            ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+            buffer.putInt(record.length).put(record).flip();
+            while (buffer.hasRemaining()) {
+                logLength += log.write(buffer, logLength);
+            }
+            return offset;
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Cannot spill to the unique event log " + logPath, e);
+        }
+    }
+
+    private StreamEvent read(long offset) {
+        ByteBuffer record = ByteBuffer.allocate(readLength(offset));
+        read(record, offset + 4);
+        return decode(record.array());
+    }
+
+    private int readLength(long offset) {
+        lengthBuffer.clear();
+        read(lengthBuffer, offset);
+        return lengthBuffer.getInt(0);
+    }
+
+    private void read(ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                int read = log.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of log at " + position);
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Cannot read the unique event log " + logPath, e);
+        }
+    }
+
+    private static byte[] encode(StreamEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(event.getTimestamp());
+            writeData(out, event.getBeforeWindowData());
+            writeData(out, event.getOnAfterWindowData());
+            writeData(out, event.getOutputData());
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Cannot serialize an event of the unique window", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static StreamEvent decode(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            StreamEvent event = new StreamEvent(0, 0, 0);
+            event.setTimestamp(in.readLong());
+            event.setBeforeWindowData(readData(in));
+            event.setOnAfterWindowData(readData(in));
+            event.setOutputData(readData(in));
+            event.setType(ComplexEvent.Type.EXPIRED);
+            return event;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SiddhiAppRuntimeException("Cannot deserialize an event of the unique window", e);
+        }
+    }
+
+    private static void writeData(DataOutputStream out, Object[] data) throws IOException {
+        if (data == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(data.length);
+        for (Object value : data) {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Integer) {
+                out.writeByte(INT);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOL);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof String) {
+                byte[] string = ((String) value).getBytes(StandardCharsets.UTF_8);
+                out.writeByte(STRING);
+                out.writeInt(string.length);
+                out.write(string);
+            } else {
+                ByteArrayOutputStream object = new ByteArrayOutputStream();
+                try (ObjectOutputStream objectOut = new ObjectOutputStream(object)) {
+                    objectOut.writeObject(value);
+                }
+                out.writeByte(OBJECT);
+                out.writeInt(object.size());
+                object.writeTo(out);
+            }
+        }
+    }
+
+    private static Object[] readData(DataInputStream in) throws IOException, ClassNotFoundException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        Object[] data = new Object[length];
+        for (int i = 0; i < length; i++) {
+            byte type = in.readByte();
+            switch (type) {
+                case NULL:
+                    break;
+                case INT:
+                    data[i] = in.readInt();
+                    break;
+                case LONG:
+                    data[i] = in.readLong();
+                    break;
+                case FLOAT:
+                    data[i] = in.readFloat();
+                    break;
+                case DOUBLE:
+                    data[i] = in.readDouble();
+                    break;
+                case BOOL:
+                    data[i] = in.readBoolean();
+                    break;
+                case STRING:
+                    byte[] string = new byte[in.readInt()];
+                    in.readFully(string);
+                    data[i] = new String(string, StandardCharsets.UTF_8);
+                    break;
+                default:
+                    byte[] object = new byte[in.readInt()];
+                    in.readFully(object);
+                    try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(object))) {
+                        data[i] = objectIn.readObject();
+                    }
+            }
+        }
+        return data;
+    }
+}
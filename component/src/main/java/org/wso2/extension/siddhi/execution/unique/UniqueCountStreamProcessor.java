@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.stream.StreamProcessor;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.AbstractDefinition;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * The class representing unique count stream processor implementation.
+ */
+
+@Extension(
+        name = "count",
+        namespace = "unique",
+        description = "This returns the exact number of distinct values of the unique key parameter"
+                + " that arrived during the previous window time period. Unlike 'unique:time' followed by"
+                + " 'count()', the events are not retained; only each distinct key and the time it was last seen"
+                + " are kept, ordered by that time so that keys that have not been seen within the window"
+                + " are dropped from the head.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute of which the distinct values should be counted.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING}),
+                @Parameter(name = "window.time",
+                        description = "The sliding time period over which the distinct values should be counted.",
+                        type = {DataType.INT, DataType.LONG})
+        },
+        returnAttributes = @ReturnAttribute(
+                name = "distinctCount",
+                description = "The number of distinct values of the unique key within the window.",
+                type = {DataType.LONG}),
+        examples = {
+                @Example(
+                        syntax = "define stream LoginEvents (timestamp long, ip string);\n" +
+                                "from LoginEvents#unique:count(ip, 1 hour)\n" +
+                                "select ip, distinctCount\n" +
+                                "insert into UniqueIpCount ;",
+
+                        description = "This query returns, for each event arriving from the 'LoginEvents' stream,"
+                                + " the number of distinct 'ip' values received during the last hour."
+                )
+        }
+)
+
+public class UniqueCountStreamProcessor extends StreamProcessor {
+
+    private KeyExtractor uniqueKeyExtractor;
+    private long timeInMilliSeconds;
+    private KeyExpiryIndex keyExpiryIndex = new KeyExpiryIndex(64);
+
+    @Override
+    protected List<Attribute> init(AbstractDefinition inputDefinition,
+                                   ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                                   SiddhiAppContext siddhiAppContext) {
+        if (attributeExpressionExecutors.length != 2) {
+            throw new SiddhiAppValidationException("Unique count should only have two parameters "
+                    + "(<string|int|bool|long|double|float> unique attribute, <int|long|time> windowTime), but found "
+                    + attributeExpressionExecutors.length + " input attributes");
+        }
+        uniqueKeyExtractor = new KeyExtractor(attributeExpressionExecutors[0]);
+        if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
+            if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
+                timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                        .getValue();
+            } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
+                timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                        .getValue();
+            } else {
+                throw new SiddhiAppValidationException("Unique count's parameter time should be either"
+                        + " int or long, but found " + attributeExpressionExecutors[1].getReturnType());
+            }
+        } else {
+            throw new SiddhiAppValidationException("Unique count should have constant for time parameter "
+                    + "but found a dynamic attribute " + attributeExpressionExecutors[1].getClass()
+                    .getCanonicalName());
+        }
+        List<Attribute> attributeList = new ArrayList<Attribute>(1);
+        attributeList.add(new Attribute("distinctCount", Attribute.Type.LONG));
+        return attributeList;
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        synchronized (this) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            keyExpiryIndex.expire(currentTime - timeInMilliSeconds);
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                if (streamEvent.getType() == StreamEvent.Type.CURRENT) {
+                    keyExpiryIndex.touch(uniqueKeyExtractor.extract(streamEvent), currentTime);
+                }
+                complexEventPopulater.populateComplexEvent(streamEvent,
+                        new Object[]{(long) keyExpiryIndex.size()});
+            }
+        }
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        //Do nothing
+    }
+
+    @Override
+    public synchronized Map<String, Object> currentState() {
+        return singletonMap("keyExpiryIndex", keyExpiryIndex);
+    }
+
+    @Override
+    public synchronized void restoreState(Map<String, Object> state) {
+        keyExpiryIndex = (KeyExpiryIndex) state.get("keyExpiryIndex");
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.stream.StreamProcessor;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.AbstractDefinition;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class representing unique distinct count stream processor implementation.
+ */
+
+@Extension(
+        name = "distinctCount",
+        namespace = "unique",
+        description = "This returns the approximate number of distinct values of the unique key parameter"
+                + " that arrived during the previous window time period, without retaining the events."
+                + " The window is split into " + UniqueDistinctCountStreamProcessor.BUCKET_COUNT
+                + " buckets each holding a HyperLogLog sketch, hence it slides in steps of one "
+                + UniqueDistinctCountStreamProcessor.BUCKET_COUNT + "th of the window time."
+                + " Each bucket takes 2^precision bytes of memory and the relative error of the estimate"
+                + " is about 1.04/sqrt(2^precision).",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute of which the distinct values should be counted.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING}),
+                @Parameter(name = "window.time",
+                        description = "The sliding time period over which the distinct values should be counted.",
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "precision",
+                        description = "The number of bits used to address the registers of each sketch. This"
+                                + " should be between " + HyperLogLog.MIN_PRECISION + " and "
+                                + HyperLogLog.MAX_PRECISION + ".",
+                        type = {DataType.INT},
+                        optional = true,
+                        defaultValue = "" + UniqueDistinctCountStreamProcessor.DEFAULT_PRECISION)
+        },
+        returnAttributes = @ReturnAttribute(
+                name = "distinctCount",
+                description = "The estimated number of distinct values of the unique key within the window.",
+                type = {DataType.LONG}),
+        examples = {
+                @Example(
+                        syntax = "define stream LoginEvents (timestamp long, ip string);\n" +
+                                "from LoginEvents#unique:distinctCount(ip, 1 hour)\n" +
+                                "select ip, distinctCount\n" +
+                                "insert into UniqueIpCount ;",
+
+                        description = "This query returns, for each event arriving from the 'LoginEvents' stream,"
+                                + " the estimated number of distinct 'ip' values received during the last hour,"
+                                + " using 16KB sketches per bucket."
+                )
+        }
+)
+
+public class UniqueDistinctCountStreamProcessor extends StreamProcessor {
+
+    static final int BUCKET_COUNT = 10;
+    static final int DEFAULT_PRECISION = 14;
+
+    private KeyExtractor uniqueKeyExtractor;
+    private long bucketTimeInMilliSeconds;
+    private int precision = DEFAULT_PRECISION;
+    private HyperLogLog[] buckets;
+    private HyperLogLog windowSketch;
+    private long currentBucketId = Long.MIN_VALUE;
+
+    @Override
+    protected List<Attribute> init(AbstractDefinition inputDefinition,
+                                   ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                                   SiddhiAppContext siddhiAppContext) {
+        if (attributeExpressionExecutors.length != 2 && attributeExpressionExecutors.length != 3) {
+            throw new SiddhiAppValidationException("Unique distinctCount should only have two or three parameters "
+                    + "(<string|int|bool|long|double|float> unique attribute, <int|long|time> windowTime, "
+                    + "<int> precision), but found " + attributeExpressionExecutors.length + " input attributes");
+        }
+        uniqueKeyExtractor = new KeyExtractor(attributeExpressionExecutors[0]);
+        long timeInMilliSeconds;
+        if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
+            if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
+                timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                        .getValue();
+            } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
+                timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                        .getValue();
+            } else {
+                throw new SiddhiAppValidationException("Unique distinctCount's parameter time should be either"
+                        + " int or long, but found " + attributeExpressionExecutors[1].getReturnType());
+            }
+        } else {
+            throw new SiddhiAppValidationException("Unique distinctCount should have constant for time parameter "
+                    + "but found a dynamic attribute " + attributeExpressionExecutors[1].getClass()
+                    .getCanonicalName());
+        }
+        if (timeInMilliSeconds < BUCKET_COUNT) {
+            throw new SiddhiAppValidationException("Unique distinctCount's parameter time should be at least "
+                    + BUCKET_COUNT + " milliseconds, but found " + timeInMilliSeconds);
+        }
+        bucketTimeInMilliSeconds = timeInMilliSeconds / BUCKET_COUNT;
+        if (attributeExpressionExecutors.length == 3) {
+            if (!(attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor)
+                    || attributeExpressionExecutors[2].getReturnType() != Attribute.Type.INT) {
+                throw new SiddhiAppValidationException("Unique distinctCount's parameter precision should be a "
+                        + "constant int, but found " + attributeExpressionExecutors[2].getReturnType());
+            }
+            precision = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue();
+            if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+                throw new SiddhiAppValidationException("Unique distinctCount's parameter precision should be "
+                        + "between " + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION
+                        + ", but found " + precision);
+            }
+        }
+        buckets = new HyperLogLog[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new HyperLogLog(precision);
+        }
+        windowSketch = new HyperLogLog(precision);
+
+        List<Attribute> attributeList = new ArrayList<Attribute>(1);
+        attributeList.add(new Attribute("distinctCount", Attribute.Type.LONG));
+        return attributeList;
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        synchronized (this) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            slideTo(Math.floorDiv(currentTime, bucketTimeInMilliSeconds));
+            HyperLogLog currentBucket = buckets[(int) Math.floorMod(currentBucketId, (long) BUCKET_COUNT)];
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                if (streamEvent.getType() == StreamEvent.Type.CURRENT) {
+                    long hash = HyperLogLog.hash(uniqueKeyExtractor.extract(streamEvent));
+                    currentBucket.offer(hash);
+                    windowSketch.offer(hash);
+                }
+                complexEventPopulater.populateComplexEvent(streamEvent, new Object[]{windowSketch.estimate()});
+            }
+        }
+        nextProcessor.process(streamEventChunk);
+    }
+
+    /**
+     * Clears the buckets that fell out of the window and rebuilds the window sketch from the remaining buckets.
+     *
+     * @param bucketId id of the bucket the current time belongs to
+     */
+    private void slideTo(long bucketId) {
+        if (bucketId <= currentBucketId) {
+            return;
+        }
+        if (currentBucketId == Long.MIN_VALUE || bucketId - currentBucketId >= BUCKET_COUNT) {
+            for (HyperLogLog bucket : buckets) {
+                bucket.clear();
+            }
+        } else {
+            for (long id = currentBucketId + 1; id <= bucketId; id++) {
+                buckets[(int) Math.floorMod(id, (long) BUCKET_COUNT)].clear();
+            }
+        }
+        currentBucketId = bucketId;
+        windowSketch.clear();
+        for (HyperLogLog bucket : buckets) {
+            windowSketch.merge(bucket);
+        }
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        //Do nothing
+    }
+
+    @Override
+    public synchronized Map<String, Object> currentState() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("buckets", buckets);
+        state.put("windowSketch", windowSketch);
+        state.put("currentBucketId", currentBucketId);
+        return state;
+    }
+
+    @Override
+    public synchronized void restoreState(Map<String, Object> state) {
+        buckets = (HyperLogLog[]) state.get("buckets");
+        windowSketch = (HyperLogLog) state.get("windowSketch");
+        currentBucketId = (Long) state.get("currentBucketId");
+    }
+}
@@ -21,12 +21,14 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
 import org.wso2.siddhi.core.event.ComplexEventChunk;
 import org.wso2.siddhi.core.event.state.StateEvent;
 import org.wso2.siddhi.core.event.stream.StreamEvent;
 import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.exception.SiddhiAppRuntimeException;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
 import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
 import org.wso2.siddhi.core.query.processor.Processor;
@@ -38,12 +40,14 @@ import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
 import org.wso2.siddhi.core.util.collection.operator.Operator;
 import org.wso2.siddhi.core.util.config.ConfigReader;
 import org.wso2.siddhi.core.util.parser.OperatorParser;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
 import org.wso2.siddhi.query.api.expression.Expression;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import static java.util.Collections.singletonMap;
 
@@ -67,6 +71,19 @@ import static java.util.Collections.singletonMap;
                         type = {DataType.INT, DataType.LONG, DataType.FLOAT,
                                 DataType.BOOL, DataType.DOUBLE}),
         },
+        systemParameter = {
+                @SystemParameter(name = "hotKeys",
+                        description = "The number of most recently updated keys whose events are kept in memory."
+                                + " The events of the other keys are spilled to a local file and read back when"
+                                + " they are updated or searched. 0 keeps all the events in memory.",
+                        defaultValue = "0",
+                        possibleParameters = "Any non negative integer"),
+                @SystemParameter(name = "spillDirectory",
+                        description = "The directory in which the file of spilled events is created. The file is"
+                                + " deleted when the window stops.",
+                        defaultValue = "<java.io.tmpdir>",
+                        possibleParameters = "Any writable directory")
+        },
         examples = {
                 @Example(
                         syntax = "define stream LoginEvents (timeStamp long, ip string) ;\n" +
@@ -100,14 +117,30 @@ import static java.util.Collections.singletonMap;
 )
 
 public class UniqueEverWindowProcessor extends WindowProcessor implements FindableProcessor {
-    private ConcurrentMap<String, StreamEvent> map = new ConcurrentHashMap<String, StreamEvent>();
-    private ExpressionExecutor[] expressionExecutors;
+    /**
+     * Latest event of each key, probed by the hash of the key attributes.
+     */
+    private KeyHashTable events;
+    /**
+     * Latest event of each key, when the events of the less recently updated keys are spilled to disk.
+     */
+    private TieredEventStore tieredEvents;
 
 
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
                         boolean b, SiddhiAppContext siddhiAppContext) {
-        expressionExecutors = attributeExpressionExecutors;
+        int hotKeys = Integer.parseInt(configReader.readConfig("hotKeys", "0"));
+        if (hotKeys < 0) {
+            throw new SiddhiAppValidationException("UniqueEver window's hotKeys should not be negative, but found "
+                    + hotKeys);
+        }
+        if (hotKeys > 0) {
+            tieredEvents = new TieredEventStore(new KeyExtractor(attributeExpressionExecutors), hotKeys,
+                    new File(configReader.readConfig("spillDirectory", System.getProperty("java.io.tmpdir"))));
+        } else {
+            events = new KeyHashTable(new KeyExtractor(attributeExpressionExecutors));
+        }
     }
 
     @Override
@@ -122,7 +155,7 @@ public class UniqueEverWindowProcessor extends WindowProcessor implements Findab
                 StreamEvent clonedEvent = streamEventCloner.copyStreamEvent(streamEvent);
                 clonedEvent.setType(StreamEvent.Type.EXPIRED);
 
-                StreamEvent oldEvent = map.put(generateKey(clonedEvent), clonedEvent);
+                StreamEvent oldEvent = tieredEvents != null ? tieredEvents.put(clonedEvent) : events.put(clonedEvent);
                 if (oldEvent != null) {
                     oldEvent.setTimestamp(currentTime);
                     streamEventChunk.add(oldEvent);
@@ -143,24 +176,61 @@ public class UniqueEverWindowProcessor extends WindowProcessor implements Findab
 
 
     @Override
-    public void stop() {
-        //Do nothing
+    public synchronized void stop() {
+        if (tieredEvents != null) {
+            try {
+                tieredEvents.close();
+            } catch (IOException e) {
+                throw new SiddhiAppRuntimeException("Cannot close the spilled events of the unique window", e);
+            }
+        }
     }
 
     @Override
-    public Map<String, Object> currentState() {
-        return singletonMap("map", this.map);
+    public synchronized Map<String, Object> currentState() {
+        return singletonMap("events", tieredEvents != null ? tieredEvents.toList() : events.toList());
     }
 
     @Override
     public synchronized void restoreState(Map<String, Object> map) {
-        this.map = (ConcurrentMap<String, StreamEvent>) map.get("map");
+        // restored in place, as compiled conditions refer to the view of the events
+        if (tieredEvents != null) {
+            tieredEvents.clear();
+            for (StreamEvent event : restoredEvents(map)) {
+                tieredEvents.put(event);
+            }
+            return;
+        }
+        events.clear();
+        for (StreamEvent event : restoredEvents(map)) {
+            events.put(event);
+        }
+    }
+
+    /**
+     * @return the events of a snapshot, which snapshots taken before the events were kept by key value hold in a
+     * map keyed by the concatenated key attributes
+     */
+    private static Collection<StreamEvent> restoredEvents(Map<String, Object> state) {
+        if (state.get("events") != null) {
+            return (List<StreamEvent>) state.get("events");
+        } else if (state.get("map") != null) {
+            return ((Map<String, StreamEvent>) state.get("map")).values();
+        }
+        throw new SiddhiAppRuntimeException("Cannot restore the unique:ever window, as its snapshot has no events");
+    }
+
+    private Collection<StreamEvent> values() {
+        return tieredEvents != null ? tieredEvents.values() : events.values();
     }
 
     @Override
-    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, map.values(), streamEventCloner);
+    public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof KeyLookup) {
+            KeyLookup keyLookup = (KeyLookup) compiledCondition;
+            return keyLookup.find(matchingEvent, events.getByKey(keyLookup.key(matchingEvent)), streamEventCloner);
+        } else if (compiledCondition instanceof Operator) {
+            return ((Operator) compiledCondition).find(matchingEvent, values(), streamEventCloner);
         } else {
             return null;
         }
@@ -173,15 +243,11 @@ public class UniqueEverWindowProcessor extends WindowProcessor implements Findab
                                               SiddhiAppContext siddhiAppContext,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap, String s) {
-        return OperatorParser.constructOperator(map.values(), expression, matchingMetaInfoHolder, siddhiAppContext,
-                variableExpressionExecutors, tableMap, this.queryName);
-    }
-
-    private String generateKey(StreamEvent event) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (ExpressionExecutor executor : expressionExecutors) {
-            stringBuilder.append(executor.execute(event));
+        if (tieredEvents != null) {
+            return OperatorParser.constructOperator(values(), expression, matchingMetaInfoHolder, siddhiAppContext,
+                    variableExpressionExecutors, tableMap, this.queryName);
         }
-        return stringBuilder.toString();
+        return KeyLookup.compile(attributeExpressionExecutors, values(), expression, matchingMetaInfoHolder,
+                siddhiAppContext, variableExpressionExecutors, tableMap, this.queryName);
     }
 }
@@ -21,6 +21,7 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
 import org.wso2.siddhi.core.event.ComplexEvent;
@@ -51,6 +52,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Class representing Unique External TimeBatch Window Processor Implementation.
@@ -75,7 +77,8 @@ import java.util.Map;
                                 DataType.BOOL, DataType.DOUBLE}),
                 @Parameter(name = "time.stamp",
                         description = " The time which the window determines as the current time and acts upon."
-                                + " The value of this parameter should be monotonically increasing.",
+                                + " The value of this parameter should be monotonically increasing, unless"
+                                + " an allowed lateness is specified.",
                         type = { DataType.LONG}),
                 @Parameter(name = "window.time",
                         description = "The sliding time period for which the window should hold events.",
@@ -87,7 +90,9 @@ import java.util.Map;
                         type = {DataType.INT}, optional = true),
                 @Parameter(name = "time.out",
                         description = "Time to wait for arrival of a new event, before flushing " +
-                                "and returning the output for events belonging to a specific batch.",
+                                "and returning the output for events belonging to a specific batch. When an"
+                                + " allowed lateness is specified, this is the time the source should be idle"
+                                + " before event time is assumed to progress with the Siddhi clock.",
                         type = {DataType.INT, DataType.LONG},
                         optional = true,
                         defaultValue = "The system waits till an event from the next batch arrives to flush " +
@@ -96,7 +101,32 @@ import java.util.Map;
                         description = "Replaces the 'timestamp' value with the corresponding batch end time stamp." ,
                         type = {DataType.INT, DataType.LONG},
                         optional = true,
-                        defaultValue = "false")
+                        defaultValue = "false"),
+                @Parameter(name = "allowed.lateness",
+                        description = "The time by which events are allowed to arrive out of order. When this"
+                                + " is specified, a watermark trailing the latest time stamp by this time is kept,"
+                                + " several batches are kept open, and each batch is flushed as soon as the"
+                                + " watermark passes its end time, in the order of their end times. Events"
+                                + " belonging to a batch the watermark has already passed are dropped.",
+                        type = {DataType.INT, DataType.LONG},
+                        optional = true,
+                        defaultValue = "Events are assigned to the current batch, which is flushed when an event"
+                                + " from the next batch arrives")
+        },
+        systemParameter = {
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "findSnapshot",
+                        description = "Whether joins search a copy of the events of the last flushed batch, taken"
+                                + " after the batch was flushed, instead of holding the lock of the window while"
+                                + " searching. The first search after each flush copies every event of the batch"
+                                + " while holding the lock of the window, so this only pays off when joins search the"
+                                + " batch several times before the next flush.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
         },
         examples = {
                 @Example(
@@ -113,6 +143,19 @@ import java.util.Map;
                                 + " The events in the window are inserted into the 'UniqueIps' output stream."
                                 + " The system waits for 2 seconds"
                                 + " for the arrival of a new event before flushing the current batch."
+                ),
+                @Example(
+                        syntax = "define stream LoginEvents (timestamp long, ip string) ;\n" +
+                                "from LoginEvents#window.unique:externalTimeBatch(ip, timestamp, 1 sec, 0, -1, "
+                                + "false, 500) \n" +
+                                "select timestamp, ip, count() as total\n" +
+                                "insert into UniqueIps ;",
+
+                        description = "In this query, the window holds the latest unique events"
+                                + " that arrive from the 'LoginEvent' stream during each second of the external"
+                                + " time stamp, accepting events that arrive up to 500 milliseconds out of order."
+                                + " Each batch is flushed once an event with a time stamp 500 milliseconds past"
+                                + " the end of the batch arrives."
                 )
         }
 )
@@ -129,6 +172,7 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
     private boolean isStartTimeEnabled = false;
     private long schedulerTimeout = 0;
     private Scheduler scheduler;
+    private SharedExpiryService.Registration sharedExpiry;
     private long lastScheduledTime;
     private long lastCurrentEventTime;
     private boolean flushed = false;
@@ -136,16 +180,27 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
     private ExpressionExecutor uniqueExpressionExecutor;
     private boolean replaceTimestampWithBatchEndTime = false;
     private boolean outputExpectsExpiredEvents;
+    private EventTimeWatermark watermark = null;
+    private TreeMap<Long, Map<Object, StreamEvent>> openBatches = new TreeMap<Long, Map<Object, StreamEvent>>();
+    private boolean findOnSnapshot;
+    private final FindSnapshot findSnapshot = new FindSnapshot(this) {
+        @Override protected List<StreamEvent> copyEvents() {
+            return expiredEvents == null ? new ArrayList<StreamEvent>()
+                    : FindSnapshot.copyOf(expiredEvents.values());
+        }
+    };
 
     @Override protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
             boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
+        sharedExpiry = SharedExpiryService.register(configReader, siddhiAppContext, this);
+        findOnSnapshot = FindSnapshot.isEnabled(configReader);
 
         if (outputExpectsExpiredEvents) {
             this.expiredEvents = new LinkedHashMap<Object, StreamEvent>();
             this.storeExpiredEvents = true;
         }
         this.outputExpectsExpiredEvents = outputExpectsExpiredEvents;
-        if (attributeExpressionExecutors.length >= 3 && attributeExpressionExecutors.length <= 6) {
+        if (attributeExpressionExecutors.length >= 3 && attributeExpressionExecutors.length <= 7) {
 
             uniqueExpressionExecutor = attributeExpressionExecutors[0];
 
@@ -201,7 +256,7 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
                 }
             }
 
-            if (attributeExpressionExecutors.length == 6) {
+            if (attributeExpressionExecutors.length >= 6) {
                 if (attributeExpressionExecutors[5].getReturnType() == Attribute.Type.BOOL) {
                     replaceTimestampWithBatchEndTime = Boolean.parseBoolean(
                             String.valueOf(((ConstantExpressionExecutor) attributeExpressionExecutors[5]).getValue()));
@@ -211,12 +266,31 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
                             + attributeExpressionExecutors[5].getReturnType());
                 }
             }
+
+            if (attributeExpressionExecutors.length == 7) {
+                long allowedLateness;
+                if (attributeExpressionExecutors[6].getReturnType() == Attribute.Type.INT) {
+                    allowedLateness = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[6])
+                            .getValue();
+                } else if (attributeExpressionExecutors[6].getReturnType() == Attribute.Type.LONG) {
+                    allowedLateness = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[6]).getValue();
+                } else {
+                    throw new SiddhiAppValidationException("ExternalTimeBatch window's 7th parameter "
+                            + "allowedLateness should be either int or long, but found "
+                            + attributeExpressionExecutors[6].getReturnType());
+                }
+                if (allowedLateness < 0) {
+                    throw new SiddhiAppValidationException("ExternalTimeBatch window's 7th parameter "
+                            + "allowedLateness should not be negative, but found " + allowedLateness);
+                }
+                watermark = new EventTimeWatermark(allowedLateness, schedulerTimeout);
+            }
         } else {
-            throw new SiddhiAppValidationException("ExternalTimeBatch window should only have three to six parameters "
-                    + "(<variable> uniqueAttribute, <long> timestamp, "
+            throw new SiddhiAppValidationException("ExternalTimeBatch window should only have three to seven "
+                    + "parameters (<variable> uniqueAttribute, <long> timestamp, "
                     + "<int|long|time> windowTime, <long> startTime, <int|long|time> timeout, "
-                    + "<bool> replaceTimestampWithBatchEndTime), but found " + attributeExpressionExecutors.length
-                    + " input attributes");
+                    + "<bool> replaceTimestampWithBatchEndTime, <int|long|time> allowedLateness), but found "
+                    + attributeExpressionExecutors.length + " input attributes");
         }
         if (schedulerTimeout > 0) {
             if (expiredEvents == null) {
@@ -234,6 +308,11 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
             return;
         }
 
+        if (watermark != null) {
+            processOutOfOrder(streamEventChunk, nextProcessor, streamEventCloner);
+            return;
+        }
+
         List<ComplexEventChunk<StreamEvent>> complexEventChunks = new ArrayList<ComplexEventChunk<StreamEvent>>();
         synchronized (this) {
             initTiming(streamEventChunk.getFirst());
@@ -259,7 +338,7 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
                         // rescheduling to emit the current batch after expiring it if no further events arrive.
                         lastScheduledTime = siddhiAppContext.getTimestampGenerator().currentTime() + schedulerTimeout;
                         if (scheduler != null) {
-                            scheduler.notifyAt(lastScheduledTime);
+                            notifyAt(lastScheduledTime);
                         }
                     }
                     continue;
@@ -287,16 +366,127 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
                     // triggering the last batch expiration.
                     if (schedulerTimeout > 0) {
                         lastScheduledTime = siddhiAppContext.getTimestampGenerator().currentTime() + schedulerTimeout;
-                        scheduler.notifyAt(lastScheduledTime);
+                        notifyAt(lastScheduledTime);
+                    }
+                }
+            }
+            findSnapshot.invalidate();
+        }
+        for (ComplexEventChunk<StreamEvent> complexEventChunk : complexEventChunks) {
+            nextProcessor.process(complexEventChunk);
+        }
+    }
+
+    /**
+     * Buffers the events into the open batches they belong to, keyed by batch end time, and flushes the batches
+     * the watermark has passed. Events of batches the watermark has already passed are dropped.
+     */
+    private void processOutOfOrder(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+            StreamEventCloner streamEventCloner) {
+        List<ComplexEventChunk<StreamEvent>> complexEventChunks = new ArrayList<ComplexEventChunk<StreamEvent>>();
+        synchronized (this) {
+            initTiming(streamEventChunk.getFirst());
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            boolean eventArrived = false;
+            StreamEvent nextStreamEvent = streamEventChunk.getFirst();
+            while (nextStreamEvent != null) {
+
+                StreamEvent currStreamEvent = nextStreamEvent;
+                nextStreamEvent = nextStreamEvent.getNext();
+
+                if (currStreamEvent.getType() == ComplexEvent.Type.TIMER) {
+                    if (lastScheduledTime <= currStreamEvent.getTimestamp()) {
+                        // no events arrived within the timeout, hence let event time progress with the clock.
+                        flushOpenBatches(watermark.onIdle(currentTime), streamEventCloner, complexEventChunks);
+                        scheduleIdleCheck();
+                    }
+                    continue;
+                } else if (currStreamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                    continue;
+                }
+                eventArrived = true;
+
+                long currentEventTime = (Long) timestampExpressionExecutor.execute(currStreamEvent);
+                if (lastCurrentEventTime < currentEventTime) {
+                    lastCurrentEventTime = currentEventTime;
+                }
+                long batchEndTime = findEndTime(currentEventTime, startTime, timeToKeep);
+                if (batchEndTime > watermark.current()) {
+                    Map<Object, StreamEvent> batch = openBatches.get(batchEndTime);
+                    if (batch == null) {
+                        batch = new LinkedHashMap<Object, StreamEvent>();
+                        openBatches.put(batchEndTime, batch);
+                    }
+                    StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(currStreamEvent);
+                    if (replaceTimestampWithBatchEndTime) {
+                        clonedStreamEvent.setAttribute(batchEndTime, timestampExpressionExecutor.getPosition());
                     }
+                    batch.put(uniqueExpressionExecutor.execute(clonedStreamEvent), clonedStreamEvent);
                 }
+                flushOpenBatches(watermark.onEvent(currentEventTime, currentTime), streamEventCloner,
+                        complexEventChunks);
             }
+            if (eventArrived) {
+                scheduleIdleCheck();
+            }
+            findSnapshot.invalidate();
         }
         for (ComplexEventChunk<StreamEvent> complexEventChunk : complexEventChunks) {
             nextProcessor.process(complexEventChunk);
         }
     }
 
+    /**
+     * Schedules a check at the time the watermark would pass the end of the earliest open batch, if the source
+     * stays idle from now on.
+     */
+    private void scheduleIdleCheck() {
+        if (schedulerTimeout > 0 && !openBatches.isEmpty()) {
+            lastScheduledTime = watermark.idleTimeReaching(openBatches.firstKey());
+            if (scheduler != null) {
+                notifyAt(lastScheduledTime);
+            }
+        }
+    }
+
+    /**
+     * Flushes the open batches ending at or before the given time in the order of their end times.
+     */
+    private void flushOpenBatches(long flushTime, StreamEventCloner streamEventCloner,
+            List<ComplexEventChunk<StreamEvent>> complexEventChunks) {
+        while (!openBatches.isEmpty() && openBatches.firstKey() <= flushTime) {
+            Map.Entry<Long, Map<Object, StreamEvent>> batch = openBatches.pollFirstEntry();
+            long batchEndTime = batch.getKey();
+            ComplexEventChunk<StreamEvent> newEventChunk = new ComplexEventChunk<StreamEvent>(true);
+            if (outputExpectsExpiredEvents) {
+                for (StreamEvent expiredEvent : expiredEvents.values()) {
+                    expiredEvent.setTimestamp(batchEndTime);
+                    newEventChunk.add(expiredEvent);
+                }
+            }
+            if (expiredEvents != null) {
+                expiredEvents.clear();
+            }
+
+            // add reset event in front of current events
+            StreamEvent batchResetEvent = streamEventCloner.copyStreamEvent(batch.getValue().values().iterator()
+                    .next());
+            batchResetEvent.setType(ComplexEvent.Type.RESET);
+            batchResetEvent.setTimestamp(batchEndTime);
+            newEventChunk.add(batchResetEvent);
+
+            for (Map.Entry<Object, StreamEvent> currentEventEntry : batch.getValue().entrySet()) {
+                if (storeExpiredEvents) {
+                    StreamEvent toExpireEvent = streamEventCloner.copyStreamEvent(currentEventEntry.getValue());
+                    toExpireEvent.setType(StreamEvent.Type.EXPIRED);
+                    expiredEvents.put(currentEventEntry.getKey(), toExpireEvent);
+                }
+                newEventChunk.add(currentEventEntry.getValue());
+            }
+            complexEventChunks.add(newEventChunk);
+        }
+    }
+
     private void initTiming(StreamEvent firstStreamEvent) {
         // for window beginning, if window is empty, set lastSendTime to incomingChunk first.
         if (endTime < 0) {
@@ -310,7 +500,7 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
             if (schedulerTimeout > 0) {
                 lastScheduledTime = siddhiAppContext.getTimestampGenerator().currentTime() + schedulerTimeout;
                 if (scheduler != null) {
-                    scheduler.notifyAt(lastScheduledTime);
+                    notifyAt(lastScheduledTime);
                 }
             }
         }
@@ -411,7 +601,7 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
 
     private long findEndTime(long currentTime, long startTime, long timeToKeep) {
         // returns the next emission time based on system clock round time values.
-        long elapsedTimeSinceLastEmit = (currentTime - startTime) % timeToKeep;
+        long elapsedTimeSinceLastEmit = Math.floorMod(currentTime - startTime, timeToKeep);
         return (currentTime + (timeToKeep - elapsedTimeSinceLastEmit));
     }
 
@@ -427,12 +617,22 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
         }
     }
 
+    private void notifyAt(long time) {
+        if (sharedExpiry != null) {
+            sharedExpiry.notifyAt(time);
+        } else {
+            scheduler.notifyAt(time);
+        }
+    }
+
     public void start() {
         //Do nothing
     }
 
     public void stop() {
-        //Do nothing
+        if (sharedExpiry != null) {
+            sharedExpiry.cancel();
+        }
     }
 
     public synchronized Map<String, Object> currentState() {
@@ -445,11 +645,14 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
         map.put("lastScheduledTime", lastScheduledTime);
         map.put("lastCurrentEventTime", lastCurrentEventTime);
         map.put("flushed", flushed);
+        map.put("openBatches", openBatches);
+        map.put("watermark", watermark);
 
         return map;
     }
 
     public synchronized void restoreState(Map<String, Object> map) {
+        findSnapshot.invalidate();
         currentEvents = (Map<Object, StreamEvent>) map.get("currentEvents");
         if (map.get("expiredEvents") != null) {
             expiredEvents = (Map<Object, StreamEvent>) map.get("expiredEvents");
@@ -467,6 +670,10 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
         lastScheduledTime = (Long) map.get("lastScheduledTime");
         lastCurrentEventTime = (Long) map.get("lastCurrentEventTime");
         flushed = (Boolean) map.get("flushed");
+        if (map.get("openBatches") != null) {
+            openBatches = (TreeMap<Long, Map<Object, StreamEvent>>) map.get("openBatches");
+            watermark = (EventTimeWatermark) map.get("watermark");
+        }
     }
 
     @Override public synchronized Scheduler getScheduler() {
@@ -477,9 +684,14 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
         this.scheduler = scheduler;
     }
 
-    @Override public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, expiredEvents, streamEventCloner);
+    @Override public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator && findOnSnapshot) {
+            return ((Operator) compiledCondition).find(matchingEvent, findSnapshot.events(),
+                    FindSnapshot.MATCH_CLONER);
+        } else if (compiledCondition instanceof Operator) {
+            synchronized (this) {
+                return ((Operator) compiledCondition).find(matchingEvent, expiredEvents, streamEventCloner);
+            }
         } else {
             return null;
         }
@@ -492,6 +704,10 @@ public class UniqueExternalTimeBatchWindowProcessor extends WindowProcessor
             expiredEvents = new LinkedHashMap<Object, StreamEvent>();
             storeExpiredEvents = true;
         }
+        if (findOnSnapshot) {
+            return OperatorParser.constructOperator(findSnapshot.events(), expression, matchingMetaInfoHolder,
+                    siddhiAppContext, variableExpressionExecutors, tableMap, this.queryName);
+        }
         return OperatorParser.constructOperator(expiredEvents, expression, matchingMetaInfoHolder, siddhiAppContext,
                 variableExpressionExecutors, tableMap, this.queryName);
     }
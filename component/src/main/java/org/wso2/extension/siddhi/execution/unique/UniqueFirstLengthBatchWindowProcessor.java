@@ -23,7 +23,6 @@ import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.event.stream.StreamEvent;
-import org.wso2.siddhi.core.executor.ExpressionExecutor;
 
 import java.util.Map;
 
@@ -66,10 +65,8 @@ import java.util.Map;
 )
 
 public class UniqueFirstLengthBatchWindowProcessor extends UniqueLengthBatchWindowProcessor {
-    @Override protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                            ExpressionExecutor uniqueKeyExpressionExecutor,
+    @Override protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, Object uniqueKey,
                                             StreamEvent clonedStreamEvent) {
-        String uniqueKey = uniqueKeyExpressionExecutor.execute(clonedStreamEvent).toString();
         if (!uniqueEventMap.containsKey(uniqueKey)) {
             uniqueEventMap.put(uniqueKey, clonedStreamEvent);
         }
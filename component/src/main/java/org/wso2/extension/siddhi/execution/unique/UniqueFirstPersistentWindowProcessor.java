@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.exception.SiddhiAppRuntimeException;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * class representing unique first persistent window processor implementation.
+ */
+
+@Extension(
+        name = "firstPersistent",
+        namespace = "unique",
+        description = "This is a window that passes only the first event of each unique key, like"
+                + " unique:first, but remembers the keys it has seen on local disk instead of holding the events"
+                + " in memory. The keys survive restarts of the Siddhi app, so that redelivered events are dropped"
+                + " even after a restart. Most lookups are answered by a Bloom filter and a cache of recently"
+                + " seen keys without reading the disk. When the Siddhi app state is restored, the keys seen"
+                + " after the restored snapshot are forgotten, so that replayed events are passed again."
+                + " The Siddhi app and the query have to be named, through @app:name('...') and"
+                + " @info(name = '...'), as the keys are found again by these names. Inside a partition, the keys"
+                + " of each partition key are kept apart."
+                + " The window does not hold events, so it cannot be joined with.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness."
+                                + " If there is more than one parameter to check for uniqueness,"
+                                + " it can be specified as an array separated by commas.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING}),
+        },
+        systemParameter = {
+                @SystemParameter(name = "directory",
+                        description = "The directory under which the keys of each window are kept, in a"
+                                + " sub directory named after the Siddhi app, the query and the input stream, and"
+                                + " after the partition key inside a partition. The default is often cleared when"
+                                + " the host reboots, so a directory should be configured for the keys to survive"
+                                + " restarts of the host.",
+                        defaultValue = "<java.io.tmpdir>/siddhi-unique",
+                        possibleParameters = "Any writable directory"),
+                @SystemParameter(name = "expectedKeys",
+                        description = "The number of keys the Bloom filter is sized for. The filter is rebuilt"
+                                + " larger when more keys are seen.",
+                        defaultValue = "1000000",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "cacheSize",
+                        description = "The number of recently seen keys that are kept in memory.",
+                        defaultValue = "10000",
+                        possibleParameters = "Any non negative integer")
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream Deliveries (messageId string, payload string);\n" +
+                                "from Deliveries#window.unique:firstPersistent(messageId)\n" +
+                                "insert into UniqueDeliveries ;",
+
+                        description = "This drops every message from the 'Deliveries' stream whose 'messageId'"
+                                + " has been seen before, including before the Siddhi app was restarted."
+                )
+        }
+)
+
+public class UniqueFirstPersistentWindowProcessor extends WindowProcessor {
+    private static final Logger log = Logger.getLogger(UniqueFirstPersistentWindowProcessor.class);
+    private static final String UUID = "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}";
+    /**
+     * Names Siddhi gives to a Siddhi app without an @app:name and to a query without an @info name, which change
+     * every time the Siddhi app is created.
+     */
+    private static final Pattern GENERATED_APP_NAME = Pattern.compile(UUID);
+    private static final Pattern GENERATED_QUERY_NAME = Pattern.compile("query_\\d+_" + UUID);
+    private ExpressionExecutor[] uniqueKeyExecutors;
+    private File directory;
+    private int expectedKeys;
+    private int cacheSize;
+    private PersistentKeySet keys;
+
+    @Override
+    protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                        boolean b, SiddhiAppContext siddhiAppContext) {
+        if (attributeExpressionExecutors.length == 0) {
+            throw new SiddhiAppValidationException("UniqueFirstPersistent window should have at least one"
+                    + " unique key attribute");
+        }
+        if (GENERATED_APP_NAME.matcher(String.valueOf(siddhiAppContext.getName())).matches()) {
+            throw new SiddhiAppValidationException("UniqueFirstPersistent window should be used in a Siddhi app named"
+                    + " through @app:name('...'), as its keys are kept under the name of the Siddhi app");
+        }
+        if (GENERATED_QUERY_NAME.matcher(String.valueOf(queryName)).matches()) {
+            throw new SiddhiAppValidationException("UniqueFirstPersistent window should be used in a query named"
+                    + " through @info(name = '...'), as its keys are kept under the name of the query");
+        }
+        uniqueKeyExecutors = attributeExpressionExecutors;
+        expectedKeys = Integer.parseInt(configReader.readConfig("expectedKeys", "1000000"));
+        cacheSize = Integer.parseInt(configReader.readConfig("cacheSize", "10000"));
+        if (expectedKeys <= 0 || cacheSize < 0) {
+            throw new SiddhiAppValidationException("UniqueFirstPersistent window's expectedKeys should be positive"
+                    + " and cacheSize should not be negative, but found " + expectedKeys + " and " + cacheSize);
+        }
+        String rootPath = configReader.readConfig("directory", null);
+        if (rootPath == null) {
+            rootPath = new File(System.getProperty("java.io.tmpdir"), "siddhi-unique").getPath();
+            log.warn("No directory is configured for the unique:firstPersistent window of query '" + queryName
+                    + "' in Siddhi app '" + siddhiAppContext.getName() + "', keeping its keys under " + rootPath
+                    + ", which may not survive a reboot");
+        }
+        File root = new File(rootPath);
+        directory = new File(new File(root, fileName(siddhiAppContext.getName())),
+                fileName(queryName + "-" + inputDefinition.getId()));
+    }
+
+    /**
+     * Keeps the keys of each partition key in a sub directory of the directory of the query. The keys are opened on
+     * first use, once the directory of the partition is known.
+     */
+    @Override
+    public Processor cloneProcessor(String key) {
+        UniqueFirstPersistentWindowProcessor window = (UniqueFirstPersistentWindowProcessor) super.cloneProcessor(key);
+        // distinct keys may have the same file name, which the hash of the key tells apart
+        window.directory = new File(directory, "partition-" + fileName(key) + "-"
+                + Integer.toHexString(String.valueOf(key).hashCode()));
+        return window;
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner) {
+        synchronized (this) {
+            Object[] values = new Object[uniqueKeyExecutors.length];
+            try {
+                while (streamEventChunk.hasNext()) {
+                    StreamEvent streamEvent = streamEventChunk.next();
+                    if (streamEvent.getType() != StreamEvent.Type.CURRENT) {
+                        streamEventChunk.remove();
+                        continue;
+                    }
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = uniqueKeyExecutors[i].execute(streamEvent);
+                    }
+                    if (!keys().add(PersistentKeySet.encode(values))) {
+                        streamEventChunk.remove();
+                    }
+                }
+            } catch (IOException e) {
+                throw new SiddhiAppRuntimeException("Cannot update the unique keys at " + directory, e);
+            }
+        }
+        if (streamEventChunk.getFirst() != null) {
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    /**
+     * @return the keys, opened on first use and again if the window was stopped
+     */
+    private PersistentKeySet keys() throws IOException {
+        if (keys == null) {
+            keys = new PersistentKeySet(directory, expectedKeys, cacheSize);
+        }
+        return keys;
+    }
+
+    private static String fileName(String name) {
+        return String.valueOf(name).replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (keys != null) {
+            try {
+                keys.close();
+            } catch (IOException e) {
+                throw new SiddhiAppRuntimeException("Cannot close the unique keys at " + directory, e);
+            } finally {
+                keys = null;
+            }
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> currentState() {
+        try {
+            return singletonMap("logLength", (Object) keys().logLength());
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Cannot open the unique keys at " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized void restoreState(Map<String, Object> state) {
+        // the keys themselves are on disk, only the ones seen after the snapshot have to be forgotten
+        try {
+            keys().rollback((Long) state.get("logLength"));
+        } catch (IOException e) {
+            throw new SiddhiAppRuntimeException("Cannot roll back the unique keys at " + directory, e);
+        }
+    }
+}
@@ -21,9 +21,9 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.event.stream.StreamEvent;
-import org.wso2.siddhi.core.executor.ExpressionExecutor;
 
 import java.util.Map;
 
@@ -54,6 +54,18 @@ import java.util.Map;
                         type = {DataType.INT, DataType.LONG},
                         optional = true)
         },
+        systemParameter = {
+                @SystemParameter(name = "parallelFlushThreshold",
+                        description = "The minimum number of unique events in a batch for the batch to be"
+                                + " prepared for emission in parallel on the common fork join pool.",
+                        defaultValue = "100000",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
         examples = {
                 @Example(
                         syntax = "define stream CseEventStream (symbol string, price float, volume int)\n" +
@@ -70,12 +82,13 @@ import java.util.Map;
 
 public class UniqueFirstTimeBatchWindowProcessor extends UniqueTimeBatchWindowProcessor {
     @Override
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                  ExpressionExecutor uniqueKeyExpressionExecutor,
+    protected boolean keepsFirstEvent() {
+        return true;
+    }
+
+    @Override
+    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, Object uniqueKey,
                                   StreamEvent clonedStreamEvent) {
-        String uniqueKey = uniqueKeyExpressionExecutor.execute(clonedStreamEvent).toString();
-        if (!uniqueEventMap.containsKey(uniqueKey)) {
-            uniqueEventMap.put(uniqueKey, clonedStreamEvent);
-        }
+        uniqueEventMap.putIfAbsent(uniqueKey, clonedStreamEvent);
     }
 }
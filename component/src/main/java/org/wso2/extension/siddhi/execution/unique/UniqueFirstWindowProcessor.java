@@ -21,13 +21,15 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
-import org.wso2.siddhi.core.event.ComplexEvent;
 import org.wso2.siddhi.core.event.ComplexEventChunk;
 import org.wso2.siddhi.core.event.state.StateEvent;
 import org.wso2.siddhi.core.event.stream.StreamEvent;
 import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.exception.SiddhiAppRuntimeException;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
 import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
 import org.wso2.siddhi.core.query.processor.Processor;
@@ -39,12 +41,15 @@ import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
 import org.wso2.siddhi.core.util.collection.operator.Operator;
 import org.wso2.siddhi.core.util.config.ConfigReader;
 import org.wso2.siddhi.core.util.parser.OperatorParser;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
 import org.wso2.siddhi.query.api.expression.Expression;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import static java.util.Collections.singletonMap;
 
@@ -58,7 +63,9 @@ import static java.util.Collections.singletonMap;
         description = "This is a window that holds only the first set of unique events"
                 + " according to the unique key parameter."
                 + " When a new event arrives with a key that is already in the window,"
-                + " that event is not processed by the window.",
+                + " that event is not processed by the window."
+                + " When a deduplication horizon is given, a key is only remembered for that time after its"
+                + " first event arrived, and is forgotten without emitting an expired event.",
 
         parameters = {
                 @Parameter(name = "unique.key",
@@ -67,6 +74,20 @@ import static java.util.Collections.singletonMap;
                                 + " it can be specified as an array separated by commas.",
                         type = {DataType.INT, DataType.LONG, DataType.FLOAT,
                                 DataType.BOOL, DataType.DOUBLE}),
+                @Parameter(name = "dedup.horizon",
+                        description = "The time for which the first event of a key is remembered. Given as a"
+                                + " constant after the unique key attributes.",
+                        type = {DataType.INT, DataType.LONG},
+                        optional = true,
+                        defaultValue = "Keys are remembered forever")
+        },
+        systemParameter = {
+                @SystemParameter(name = "generations",
+                        description = "The number of time slices the deduplication horizon is split into. Keys"
+                                + " are forgotten a slice at a time, so more slices keep keys closer to the"
+                                + " horizon at the cost of more lookups per event.",
+                        defaultValue = "4",
+                        possibleParameters = "Any positive integer")
         },
         examples = {
                 @Example(
@@ -79,34 +100,70 @@ import static java.util.Collections.singletonMap;
                                 + " and returns them to the 'UniqueIps' stream."
                                 + " The unique events are only those with a unique value for the 'ip' attribute."
 
+                ),
+                @Example(
+                        syntax = "define stream Deliveries (messageId string, payload string);\n" +
+                                "from Deliveries#window.unique:first(messageId, 24 hours)\n" +
+                                "insert into UniqueDeliveries ;",
+
+                        description = "This drops redelivered messages from the 'Deliveries' stream, remembering"
+                                + " each 'messageId' for 24 hours after it was first seen."
                 )
         }
 )
 
 public class UniqueFirstWindowProcessor extends WindowProcessor implements FindableProcessor {
-    private ConcurrentMap<String, StreamEvent> map = new ConcurrentHashMap<String, StreamEvent>();
-    private ExpressionExecutor[] uniqueExpressionExecutors;
+    /**
+     * First event of each key, probed by the hash of the key attributes.
+     */
+    private KeyGenerations events;
+    private SiddhiAppContext siddhiAppContext;
 
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
                         boolean b, SiddhiAppContext siddhiAppContext) {
-        uniqueExpressionExecutors = attributeExpressionExecutors;
-
+        this.siddhiAppContext = siddhiAppContext;
+        int last = attributeExpressionExecutors.length - 1;
+        if (last > 0 && attributeExpressionExecutors[last] instanceof ConstantExpressionExecutor) {
+            long horizon;
+            if (attributeExpressionExecutors[last].getReturnType() == Attribute.Type.INT) {
+                horizon = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[last]).getValue();
+            } else if (attributeExpressionExecutors[last].getReturnType() == Attribute.Type.LONG) {
+                horizon = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[last]).getValue();
+            } else {
+                throw new SiddhiAppValidationException("UniqueFirst window's dedup horizon should be either int"
+                        + " or long, but found " + attributeExpressionExecutors[last].getReturnType());
+            }
+            if (horizon <= 0) {
+                throw new SiddhiAppValidationException("UniqueFirst window's dedup horizon should be positive,"
+                        + " but found " + horizon);
+            }
+            int generations = Integer.parseInt(configReader.readConfig("generations", "4"));
+            if (generations <= 0) {
+                throw new SiddhiAppValidationException("UniqueFirst window's generations should be positive,"
+                        + " but found " + generations);
+            }
+            events = new KeyGenerations(new KeyExtractor(Arrays.copyOf(attributeExpressionExecutors, last)),
+                    horizon, generations);
+        } else {
+            events = new KeyGenerations(new KeyExtractor(attributeExpressionExecutors));
+        }
     }
 
     @Override
     protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                            StreamEventCloner streamEventCloner) {
         synchronized (this) {
+            events.advance(siddhiAppContext.getTimestampGenerator().currentTime());
             while (streamEventChunk.hasNext()) {
                 StreamEvent streamEvent = streamEventChunk.next();
 
-                StreamEvent clonedEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                clonedEvent.setType(StreamEvent.Type.EXPIRED);
-
-                ComplexEvent oldEvent = map.putIfAbsent(generateKey(clonedEvent), clonedEvent);
-                if (oldEvent != null) {
+                // only the first event of a key is copied, repeated keys are dropped after a probe
+                StreamEvent clonedEvent = events.copyIfAbsent(streamEvent, streamEventCloner);
+                if (clonedEvent == null) {
                     streamEventChunk.remove();
+                } else {
+                    clonedEvent.setType(StreamEvent.Type.EXPIRED);
                 }
             }
         }
@@ -124,27 +181,47 @@ public class UniqueFirstWindowProcessor extends WindowProcessor implements Finda
     }
 
     @Override
-    public Map<String, Object> currentState() {
-        return singletonMap("map", this.map);
+    public synchronized Map<String, Object> currentState() {
+        if (!events.isBounded()) {
+            return singletonMap("events", events.toList());
+        }
+        Map<String, Object> state = new HashMap<>();
+        state.put("generations", events.generationLists());
+        state.put("generation", events.currentSlot());
+        return state;
     }
 
     @Override
-    public void restoreState(Map<String, Object> map) {
-        this.map = (ConcurrentMap<String, StreamEvent>) map.get("map");
+    public synchronized void restoreState(Map<String, Object> map) {
+        if (map.containsKey("generations")) {
+            events.restore((List<List<StreamEvent>>) map.get("generations"), (Long) map.get("generation"));
+            return;
+        }
+        // restored in place, as compiled conditions refer to the view of the events
+        events.clear();
+        for (StreamEvent event : restoredEvents(map)) {
+            events.putIfAbsent(event);
+        }
     }
 
-    private String generateKey(StreamEvent event) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (ExpressionExecutor executor : uniqueExpressionExecutors) {
-            stringBuilder.append(executor.execute(event));
+    /**
+     * @return the events of a snapshot, which snapshots taken before the events were kept by key value hold in a
+     * map keyed by the concatenated key attributes
+     */
+    private static Collection<StreamEvent> restoredEvents(Map<String, Object> state) {
+        if (state.get("events") != null) {
+            return (List<StreamEvent>) state.get("events");
+        } else if (state.get("map") != null) {
+            return ((Map<String, StreamEvent>) state.get("map")).values();
         }
-        return stringBuilder.toString();
+        throw new SiddhiAppRuntimeException("Cannot restore the unique:first window, as its snapshot has no events");
     }
 
     @Override
-    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+    public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
         if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, map.values(), streamEventCloner);
+            events.advance(siddhiAppContext.getTimestampGenerator().currentTime());
+            return ((Operator) compiledCondition).find(matchingEvent, events.values(), streamEventCloner);
         } else {
             return null;
         }
@@ -156,7 +233,7 @@ public class UniqueFirstWindowProcessor extends WindowProcessor implements Finda
                                               SiddhiAppContext siddhiAppContext,
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> eventTableMap, String queryName) {
-        return OperatorParser.constructOperator(this.map.values(), expression, matchingMetaInfoHolder,
+        return OperatorParser.constructOperator(events.values(), expression, matchingMetaInfoHolder,
                 siddhiAppContext, variableExpressionExecutors, eventTableMap, queryName);
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.SchedulingProcessor;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class representing unique hopping time window processor implementation.
+ */
+
+@Extension(
+        name = "hoppingTime",
+        namespace = "unique",
+        description = "This is a hopping time window that is emitted once every hop time, and then holds the latest"
+                + " unique events that arrived during the previous window time. The unique events are determined"
+                + " based on the value for a specified unique key parameter. At every hop the events of the"
+                + " previous emission are expired, and the latest event of each unique key that arrived within"
+                + " the window time is returned. The window time should be a multiple of the hop time.",
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING}),
+
+                @Parameter(name = "window.time",
+                        description = "The time period for which the window should hold events.",
+                        type = {DataType.INT, DataType.LONG}),
+
+                @Parameter(name = "hop.time",
+                        description = "The time period after which the window is emitted.",
+                        type = {DataType.INT, DataType.LONG})
+        },
+        systemParameter = {
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream CseEventStream (symbol string, price float, volume int)\n\n" +
+                                "from CseEventStream#window.unique:hoppingTime(symbol, 10 min, 30 sec)\n" +
+                                "select symbol, price, volume\n" +
+                                "insert all events into OutputStream ;",
+
+                        description = "Every 30 seconds, this window returns the latest event for each 'symbol'"
+                                + " that arrived from the 'CseEventStream' within the last 10 minutes to the"
+                                + " 'OutputStream' stream, and expires the events it returned 30 seconds before."
+                )
+        }
+)
+
+public class UniqueHoppingTimeWindowProcessor extends AbstractUniqueBatchWindowProcessor
+        implements SchedulingProcessor {
+
+    private int paneCount;
+    /**
+     * Unique events of each hop within the window, from the oldest to the latest. The window is built by merging
+     * the panes at each hop, and a hop that falls out of the window is dropped as a whole.
+     */
+    private final ArrayDeque<Map<Object, StreamEvent>> panes = new ArrayDeque<Map<Object, StreamEvent>>();
+
+    @Override
+    protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                        boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
+        this.siddhiAppContext = siddhiAppContext;
+        planState(outputExpectsExpiredEvents);
+        initSharedExpiry(configReader);
+        if (attributeExpressionExecutors.length != 3) {
+            throw new SiddhiAppValidationException("UniqueHoppingTime window should only have three parameters "
+                    + "(<string|int|bool|long|double|float> unique attribute, <int|long|time> windowTime, "
+                    + "<int|long|time> hopTime), but found " + attributeExpressionExecutors.length
+                    + " input attributes");
+        }
+        uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
+        long windowTime = getTime(attributeExpressionExecutors[1], "window time");
+        timeInMilliSeconds = getTime(attributeExpressionExecutors[2], "hop time");
+        if (timeInMilliSeconds <= 0 || windowTime < timeInMilliSeconds || windowTime % timeInMilliSeconds != 0) {
+            throw new SiddhiAppValidationException("UniqueHoppingTime window's window time should be a positive "
+                    + "multiple of its hop time, but found window time " + windowTime + " and hop time "
+                    + timeInMilliSeconds);
+        }
+        paneCount = (int) (windowTime / timeInMilliSeconds);
+    }
+
+    private long getTime(ExpressionExecutor attributeExpressionExecutor, String parameterName) {
+        if (!(attributeExpressionExecutor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppValidationException("UniqueHoppingTime window should have constant for "
+                    + parameterName + " parameter but found a dynamic attribute "
+                    + attributeExpressionExecutor.getClass().getCanonicalName());
+        }
+        if (attributeExpressionExecutor.getReturnType() == Attribute.Type.INT) {
+            return (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutor).getValue();
+        } else if (attributeExpressionExecutor.getReturnType() == Attribute.Type.LONG) {
+            return (Long) ((ConstantExpressionExecutor) attributeExpressionExecutor).getValue();
+        } else {
+            throw new SiddhiAppValidationException("UniqueHoppingTime window's parameter " + parameterName
+                    + " should be either int or long, but found " + attributeExpressionExecutor.getReturnType());
+        }
+    }
+
+    @Override
+    protected ChunkAction onChunk(long currentTime) {
+        return isBatchTimeElapsed(currentTime) ? ChunkAction.ADD_THEN_FLUSH : ChunkAction.ADD;
+    }
+
+    @Override
+    protected boolean hasConcurrentIntake() {
+        return true;
+    }
+
+    /**
+     * Closes the pane of the current hop and replaces it with the merged window, so that the latest event of each
+     * unique key across the panes is flushed. Only the events that are flushed are cloned.
+     */
+    @Override
+    protected void beforeFlush(Map<Object, StreamEvent> batch) {
+        panes.addLast(new HashMap<Object, StreamEvent>(batch));
+        if (panes.size() > paneCount) {
+            panes.removeFirst();
+        }
+        batch.clear();
+        Iterator<Map<Object, StreamEvent>> iterator = panes.descendingIterator();
+        while (iterator.hasNext()) {
+            for (Map.Entry<Object, StreamEvent> entry : iterator.next().entrySet()) {
+                if (!batch.containsKey(entry.getKey())) {
+                    batch.put(entry.getKey(), streamEventCloner.copyStreamEvent(entry.getValue()));
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void saveState(Map<String, Object> state) {
+        List<Map<Object, StreamEvent>> paneList = new ArrayList<Map<Object, StreamEvent>>();
+        for (Map<Object, StreamEvent> pane : panes) {
+            paneList.add(new HashMap<Object, StreamEvent>(pane));
+        }
+        state.put("panes", paneList);
+    }
+
+    @Override
+    protected void loadState(Map<String, Object> state) {
+        panes.clear();
+        if (state.get("panes") != null) {
+            panes.addAll((List<Map<Object, StreamEvent>>) state.get("panes"));
+        }
+    }
+}
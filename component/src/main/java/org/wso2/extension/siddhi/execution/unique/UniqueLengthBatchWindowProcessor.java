@@ -21,33 +21,14 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
-import org.wso2.siddhi.core.event.ComplexEvent;
-import org.wso2.siddhi.core.event.ComplexEventChunk;
-import org.wso2.siddhi.core.event.state.StateEvent;
-import org.wso2.siddhi.core.event.stream.StreamEvent;
-import org.wso2.siddhi.core.event.stream.StreamEventCloner;
 import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
-import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
-import org.wso2.siddhi.core.query.processor.Processor;
-import org.wso2.siddhi.core.query.processor.stream.window.FindableProcessor;
-import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
-import org.wso2.siddhi.core.table.Table;
-import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
-import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
-import org.wso2.siddhi.core.util.collection.operator.Operator;
 import org.wso2.siddhi.core.util.config.ConfigReader;
-import org.wso2.siddhi.core.util.parser.OperatorParser;
 import org.wso2.siddhi.query.api.definition.Attribute;
 import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
-import org.wso2.siddhi.query.api.expression.Expression;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * class representing unique length batch window processor implementation.
@@ -73,6 +54,23 @@ import java.util.Map;
                         description = "The number of events the window should tumble.",
                         type = {DataType.INT}),
         },
+        systemParameter = {
+                @SystemParameter(name = "ringBufferSize",
+                        description = "The number of slots, a power of two, of a ring buffer that producers publish"
+                                + " their events into, to be added to the window by a single thread. Zero disables"
+                                + " the ring buffer.",
+                        defaultValue = "0",
+                        possibleParameters = "0, or any power of two"),
+                @SystemParameter(name = "ringBufferWaitStrategy",
+                        description = "How the thread adding the events waits for events to arrive in the ring.",
+                        defaultValue = "SLEEPING",
+                        possibleParameters = {"BUSY_SPIN", "YIELDING", "SLEEPING"}),
+                @SystemParameter(name = "ringBufferBackpressure",
+                        description = "Whether a producer waits for a free slot or drops its event when the ring"
+                                + " is full.",
+                        defaultValue = "BLOCK",
+                        possibleParameters = {"BLOCK", "DROP"})
+        },
         examples = {
                 @Example(
                         syntax = "define window CseEventWindow (symbol string, price float, volume int)\n\n " +
@@ -91,23 +89,16 @@ import java.util.Map;
         }
 )
 
-public class UniqueLengthBatchWindowProcessor extends WindowProcessor implements FindableProcessor {
+public class UniqueLengthBatchWindowProcessor extends AbstractUniqueBatchWindowProcessor {
 
     private int windowLength;
-    private int count = 0;
-    private ComplexEventChunk<StreamEvent> currentEventChunk = new ComplexEventChunk<StreamEvent>(false);
-    private ComplexEventChunk<StreamEvent> eventsToBeExpired = null;
-    private SiddhiAppContext siddhiAppContext;
-    private StreamEvent resetEvent = null;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
-    private Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
-
 
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
-                        boolean b, SiddhiAppContext siddhiAppContext) {
+                        boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
         this.siddhiAppContext = siddhiAppContext;
-        this.eventsToBeExpired = new ComplexEventChunk<>(false);
+        planState(outputExpectsExpiredEvents);
+        initRingBufferIntake(configReader);
         if (attributeExpressionExecutors.length == 2) {
             this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
             if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
@@ -132,128 +123,18 @@ public class UniqueLengthBatchWindowProcessor extends WindowProcessor implements
 
     }
 
-
-    @Override
-    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
-                           StreamEventCloner streamEventCloner) {
-        List<ComplexEventChunk<StreamEvent>> streamEventChunks = new ArrayList<ComplexEventChunk<StreamEvent>>();
-        synchronized (this) {
-            ComplexEventChunk<StreamEvent> outputStreamEventChunk = new ComplexEventChunk<StreamEvent>(true);
-            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
-            while (streamEventChunk.hasNext()) {
-                StreamEvent streamEvent = streamEventChunk.next();
-                if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
-                    continue;
-                }
-                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                addUniqueEvent(uniqueEventMap, uniqueKeyExpressionExecutor, clonedStreamEvent);
-                if (uniqueEventMap.size() == windowLength) {
-                    for (StreamEvent event : uniqueEventMap.values()) {
-                        event.setTimestamp(currentTime);
-                        currentEventChunk.add(event);
-                    }
-                    uniqueEventMap.clear();
-                    if (eventsToBeExpired.getFirst() != null) {
-                        while (eventsToBeExpired.hasNext()) {
-                            StreamEvent expiredEvent = eventsToBeExpired.next();
-                            expiredEvent.setTimestamp(currentTime);
-                        }
-                        outputStreamEventChunk.add(eventsToBeExpired.getFirst());
-                    }
-                    eventsToBeExpired.clear();
-                    if (currentEventChunk.getFirst() != null) {
-                        // add reset event in front of current events
-                        outputStreamEventChunk.add(resetEvent);
-                        currentEventChunk.reset();
-                        while (currentEventChunk.hasNext()) {
-                            StreamEvent toExpireEvent = currentEventChunk.next();
-                            StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(toExpireEvent);
-                            eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
-                            eventsToBeExpired.add(eventClonedForMap);
-                        }
-                        resetEvent = streamEventCloner.copyStreamEvent(currentEventChunk.getFirst());
-                        resetEvent.setType(ComplexEvent.Type.RESET);
-                        outputStreamEventChunk.add(currentEventChunk.getFirst());
-                    }
-                    currentEventChunk.clear();
-                    if (outputStreamEventChunk.getFirst() != null) {
-                        streamEventChunks.add(outputStreamEventChunk);
-                    }
-                }
-            }
-        }
-        for (ComplexEventChunk<StreamEvent> outputStreamEventChunk : streamEventChunks) {
-            nextProcessor.process(outputStreamEventChunk);
-        }
-    }
-
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap, ExpressionExecutor uniqueKey,
-                                  StreamEvent clonedStreamEvent) {
-        uniqueEventMap.put(uniqueKey.execute(clonedStreamEvent), clonedStreamEvent);
-    }
-
-    @Override
-    public void start() {
-        //Do nothing
-    }
-
-    @Override
-    public void stop() {
-        //Do nothing
-    }
-
     @Override
-    public Map<String, Object> currentState() {
-        if (eventsToBeExpired != null) {
-            Map<String, Object> map = new HashMap<>();
-            map.put("currentEventChunk", currentEventChunk.getFirst());
-            map.put("eventsToBeExpired", eventsToBeExpired.getFirst());
-            map.put("count", count);
-            map.put("resetEvent", resetEvent);
-            return map;
-        } else {
-            Map<String, Object> map = new HashMap<>();
-            map.put("currentEventChunk", currentEventChunk.getFirst());
-            map.put("count", count);
-            map.put("resetEvent", resetEvent);
-            return map;
-        }
+    protected ChunkAction onChunk(long currentTime) {
+        return ChunkAction.ADD;
     }
 
     @Override
-    public void restoreState(Map<String, Object> map) {
-        if (map.size() > 3) {
-            currentEventChunk.clear();
-            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-            eventsToBeExpired.clear();
-            eventsToBeExpired.add((StreamEvent) map.get("eventsToBeExpired"));
-            count = (Integer) map.get("count");
-            resetEvent = (StreamEvent) map.get("resetEvent");
-        } else {
-            currentEventChunk.clear();
-            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-            count = (Integer) map.get("count");
-            resetEvent = (StreamEvent) map.get("resetEvent");
-        }
-    }
-
-    @Override
-    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, uniqueEventMap.values(), streamEventCloner);
-        } else {
-            return null;
-        }
-
+    protected boolean isBatchFull(int size) {
+        return size == windowLength;
     }
 
     @Override
-    public CompiledCondition compileCondition(Expression expression,
-                                              MatchingMetaInfoHolder matchingMetaInfoHolder,
-                                              SiddhiAppContext siddhiAppContext,
-                                              List<VariableExpressionExecutor> list, Map<String, Table> map,
-                                              String queryName) {
-        return OperatorParser.constructOperator(uniqueEventMap.values(), expression, matchingMetaInfoHolder,
-                siddhiAppContext, list, map, queryName);
+    protected Object getFindableEvents() {
+        return getUniqueEventMap().values();
     }
 }
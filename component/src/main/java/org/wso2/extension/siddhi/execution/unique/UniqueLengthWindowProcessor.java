@@ -20,6 +20,7 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
 import org.wso2.siddhi.core.event.ComplexEventChunk;
@@ -41,6 +42,7 @@ import org.wso2.siddhi.core.util.parser.OperatorParser;
 import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
 import org.wso2.siddhi.query.api.expression.Expression;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +70,23 @@ import java.util.concurrent.ConcurrentHashMap;
                                 + "included in a sliding length window.",
                         type = {DataType.INT})
         },
+        systemParameter = {
+                @SystemParameter(name = "columnarStore",
+                        description = "Whether the window keeps its events in a columnar store, holding each"
+                                + " attribute in an array of primitives or dictionary codes, and only creating the"
+                                + " events again when they expire or match a join.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "findSnapshot",
+                        description = "Whether joins search a copy of the events of the window, taken after the"
+                                + " window last changed, instead of holding the lock of the window while searching."
+                                + " The first search after each change copies every event of the window while"
+                                + " holding its lock, so this only pays off when joins search the window far more"
+                                + " often than it changes. Under continuous ingestion it costs more than searching"
+                                + " under the lock.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
         examples = @Example(
                 syntax = "define stream CseEventStream (symbol string, price float, volume int)\n" +
                         "from CseEventStream#window.unique:length(symbol,10)\n" +
@@ -86,29 +105,50 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class UniqueLengthWindowProcessor extends WindowProcessor implements FindableProcessor {
     private ConcurrentHashMap<String, StreamEvent> map = new ConcurrentHashMap<String, StreamEvent>();
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
+    private KeyExtractor uniqueKeyExtractor;
     private int length;
     private int count = 0;
     private ComplexEventChunk<StreamEvent> expiredEventChunk;
+    /**
+     * Events of the window when the columnar store is enabled, in arrival order, with the slot of each key by the
+     * dictionary encoded id of the key.
+     */
+    private ColumnarEventStore columnarStore;
+    private final KeyDictionary keyDictionary = new KeyDictionary(KeyDictionary.DEFAULT_MAX_IDLE_KEYS);
+    private int[] slotsByKeyId = new int[16];
+    private boolean findOnSnapshot;
+    private final FindSnapshot findSnapshot = new FindSnapshot(this) {
+        @Override
+        protected List<StreamEvent> copyEvents() {
+            return columnarStore != null ? columnarStore.toList() : FindSnapshot.copyOf(expiredEventChunk);
+        }
+    };
 
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
                         boolean b, SiddhiAppContext siddhiAppContext) {
         expiredEventChunk = new ComplexEventChunk<StreamEvent>(false);
         if (attributeExpressionExecutors.length == 2) {
-            uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
+            uniqueKeyExtractor = new KeyExtractor(attributeExpressionExecutors[0]);
             length = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
         } else {
             throw new SiddhiAppValidationException("Unique Length window should only have two parameters "
                     + "(<string|int|bool|long|double|float> attribute, <int> windowLength), but found "
                     + attributeExpressionExecutors.length + " input attributes");
         }
-
+        if (Boolean.parseBoolean(configReader.readConfig("columnarStore", "false"))) {
+            columnarStore = new ColumnarEventStore(length);
+        }
+        findOnSnapshot = FindSnapshot.isEnabled(configReader);
     }
 
     @Override
     protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                            StreamEventCloner streamEventCloner) {
+        if (columnarStore != null) {
+            processColumnar(streamEventChunk, nextProcessor);
+            return;
+        }
         synchronized (this) {
             long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
             while (streamEventChunk.hasNext()) {
@@ -146,10 +186,50 @@ public class UniqueLengthWindowProcessor extends WindowProcessor implements Find
                     }
                 }
             }
+            findSnapshot.invalidate();
+        }
+        nextProcessor.process(streamEventChunk);
+    }
+
+    /**
+     * Keeps the events in the columnar store. The event of a replaced key expires, and when a new key arrives at a
+     * full window the eldest event expires along with its key.
+     */
+    private void processColumnar(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor) {
+        synchronized (this) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                Object key = uniqueKeyExtractor.extract(streamEvent);
+                int keyId = keyDictionary.get(key);
+                int expiredSlot = KeyDictionary.NONE;
+                if (keyId != KeyDictionary.NONE) {
+                    expiredSlot = slotsByKeyId[keyId];
+                } else if (columnarStore.size() == length) {
+                    expiredSlot = columnarStore.first();
+                }
+                if (expiredSlot != KeyDictionary.NONE) {
+                    StreamEvent expiredEvent = columnarStore.materialize(expiredSlot, StreamEvent.Type.EXPIRED);
+                    keyDictionary.release(columnarStore.keyId(expiredSlot));
+                    columnarStore.remove(expiredSlot);
+                    expiredEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(expiredEvent);
+                }
+                addColumnar(key, streamEvent);
+            }
+            findSnapshot.invalidate();
         }
         nextProcessor.process(streamEventChunk);
     }
 
+    private void addColumnar(Object key, StreamEvent streamEvent) {
+        int keyId = keyDictionary.acquire(key);
+        if (keyId >= slotsByKeyId.length) {
+            slotsByKeyId = Arrays.copyOf(slotsByKeyId, keyDictionary.capacity());
+        }
+        slotsByKeyId[keyId] = columnarStore.add(streamEvent, keyId);
+    }
+
     @Override
     public void start() {
         //Do nothing
@@ -163,6 +243,10 @@ public class UniqueLengthWindowProcessor extends WindowProcessor implements Find
     @Override
     public synchronized Map<String, Object> currentState() {
         Map<String, Object> map = new HashMap<String, Object>();
+        if (columnarStore != null) {
+            map.put("events", columnarStore.toList());
+            return map;
+        }
         map.put("expiredEventChunk", expiredEventChunk.getFirst());
         map.put("count", count);
         map.put("map", this.map);
@@ -171,6 +255,16 @@ public class UniqueLengthWindowProcessor extends WindowProcessor implements Find
 
     @Override
     public synchronized void restoreState(Map<String, Object> map) {
+        findSnapshot.invalidate();
+        if (columnarStore != null) {
+            // restored in place, as compiled conditions refer to the view of the store
+            columnarStore.clear();
+            keyDictionary.clear();
+            for (StreamEvent streamEvent : (List<StreamEvent>) map.get("events")) {
+                addColumnar(uniqueKeyExtractor.extract(streamEvent), streamEvent);
+            }
+            return;
+        }
         expiredEventChunk.clear();
         expiredEventChunk.add((StreamEvent) map.get("expiredEventChunk"));
         count = (Integer) map.get("count");
@@ -179,15 +273,24 @@ public class UniqueLengthWindowProcessor extends WindowProcessor implements Find
 
     @Override
     public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, expiredEventChunk, streamEventCloner);
+        if (compiledCondition instanceof Operator && findOnSnapshot) {
+            return ((Operator) compiledCondition).find(matchingEvent, findSnapshot.events(),
+                    FindSnapshot.MATCH_CLONER);
+        } else if (compiledCondition instanceof Operator && columnarStore != null) {
+            synchronized (this) {
+                return ((Operator) compiledCondition).find(matchingEvent, columnarStore.view(), streamEventCloner);
+            }
+        } else if (compiledCondition instanceof Operator) {
+            synchronized (this) {
+                return ((Operator) compiledCondition).find(matchingEvent, expiredEventChunk, streamEventCloner);
+            }
         } else {
             return null;
         }
     }
 
     private String generateKey(StreamEvent event) {
-        return uniqueKeyExpressionExecutor.execute(event).toString();
+        return uniqueKeyExtractor.extract(event).toString();
     }
 
     @Override
@@ -196,6 +299,14 @@ public class UniqueLengthWindowProcessor extends WindowProcessor implements Find
                                               SiddhiAppContext siddhiAppContext,
                                               List<VariableExpressionExecutor> list, Map<String, Table> map,
                                               String queryName) {
+        if (findOnSnapshot) {
+            return OperatorParser.constructOperator(findSnapshot.events(), expression, matchingMetaInfoHolder,
+                    siddhiAppContext, list, map, queryName);
+        }
+        if (columnarStore != null) {
+            return OperatorParser.constructOperator(columnarStore.view(), expression, matchingMetaInfoHolder,
+                    siddhiAppContext, list, map, queryName);
+        }
         return OperatorParser.constructOperator(expiredEventChunk, expression, matchingMetaInfoHolder,
                 siddhiAppContext, list, map, queryName);
     }
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.state.StateEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.SchedulingProcessor;
+import org.wso2.siddhi.core.query.processor.stream.window.FindableProcessor;
+import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
+import org.wso2.siddhi.core.table.Table;
+import org.wso2.siddhi.core.util.Scheduler;
+import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
+import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import org.wso2.siddhi.core.util.collection.operator.Operator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.core.util.parser.OperatorParser;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.siddhi.query.api.expression.Expression;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * The class representing unique session window processor implementation.
+ */
+
+@Extension(
+        name = "session",
+        namespace = "unique",
+        description = "This is a session window that holds the latest unique events of each session."
+                + " The unique events are determined based on the value for a specified unique key parameter."
+                + " A session is kept open as long as events of it keep arriving within the session gap, and all"
+                + " its events expire when no events arrive for the session gap."
+                + " When a new event that arrives within an open session"
+                + " has the same value for the unique key parameter as an existing event of the session,"
+                + " the existing event expires and it is replaced by the new event.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING}),
+                @Parameter(name = "session.gap",
+                        description = "The time period of inactivity after which a session is closed.",
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "session.key",
+                        description = "The attribute that identifies the session an event belongs to. Each"
+                                + " session is opened and closed independently.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING},
+                        optional = true,
+                        defaultValue = "All events belong to a single session")
+        },
+        systemParameter = {
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream PageViews (user string, page string, timestamp long);\n" +
+                                "from PageViews#window.unique:session(page, 30 min, user)\n" +
+                                "select user, count() as distinctPages\n" +
+                                "group by user\n" +
+                                "insert into UserActivity ;",
+
+                        description = "In this query, the window holds the latest view of each distinct page"
+                                + " within the browsing session of each user, where a session closes after"
+                                + " 30 minutes without any views by the user. The number of distinct pages"
+                                + " viewed in the current session is returned for each user."
+                )
+        }
+)
+
+public class UniqueSessionWindowProcessor extends WindowProcessor implements SchedulingProcessor,
+        FindableProcessor {
+
+    private long sessionGap;
+    private Scheduler scheduler;
+    private SharedExpiryService.Registration sharedExpiry;
+    private SiddhiAppContext siddhiAppContext;
+    private volatile long lastTimestamp = Long.MIN_VALUE;
+    private KeyExtractor uniqueKeyExtractor;
+    private ExpressionExecutor sessionKeyExpressionExecutor;
+    /**
+     * Sessions in access order. As the gap is the same for all sessions, this is also the order they close in,
+     * hence closed sessions are always found at the head.
+     */
+    private Map<Object, Session> sessions = new LinkedHashMap<Object, Session>(16, 0.75f, true);
+    private final SessionEvents sessionEvents = new SessionEvents();
+
+    @Override
+    public synchronized Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public synchronized void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                        boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
+        sharedExpiry = SharedExpiryService.register(configReader, siddhiAppContext, this);
+        this.siddhiAppContext = siddhiAppContext;
+        if (attributeExpressionExecutors.length != 2 && attributeExpressionExecutors.length != 3) {
+            throw new SiddhiAppValidationException("UniqueSession window should only have two or three parameters "
+                    + "(<string|int|bool|long|double|float> unique attribute, <int|long|time> sessionGap, "
+                    + "<string|int|bool|long|double|float> session attribute), but found "
+                    + attributeExpressionExecutors.length + " input attributes");
+        }
+        uniqueKeyExtractor = new KeyExtractor(attributeExpressionExecutors[0]);
+        if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
+            if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
+                sessionGap = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
+            } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
+                sessionGap = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
+            } else {
+                throw new SiddhiAppValidationException("UniqueSession window's parameter session gap should be "
+                        + "either int or long, but found " + attributeExpressionExecutors[1].getReturnType());
+            }
+        } else {
+            throw new SiddhiAppValidationException("UniqueSession window should have constant for session gap "
+                    + "parameter but found a dynamic attribute " + attributeExpressionExecutors[1].getClass()
+                    .getCanonicalName());
+        }
+        if (attributeExpressionExecutors.length == 3) {
+            if (!(attributeExpressionExecutors[2] instanceof VariableExpressionExecutor)) {
+                throw new SiddhiAppValidationException("UniqueSession window's parameter session key should be "
+                        + "an attribute, but found " + attributeExpressionExecutors[2].getClass()
+                        .getCanonicalName());
+            }
+            sessionKeyExpressionExecutor = attributeExpressionExecutors[2];
+        }
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner) {
+        synchronized (this) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                closeSessions(streamEventChunk, currentTime);
+                if (streamEvent.getType() != StreamEvent.Type.CURRENT) {
+                    streamEventChunk.remove();
+                    continue;
+                }
+                Object sessionKey = sessionKeyExpressionExecutor == null ? null :
+                        sessionKeyExpressionExecutor.execute(streamEvent);
+                Session session = sessions.get(sessionKey);
+                if (session == null) {
+                    session = new Session();
+                    sessions.put(sessionKey, session);
+                }
+                session.lastActivityTime = currentTime;
+                StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(streamEvent);
+                eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
+                StreamEvent oldEvent = session.events.put(uniqueKeyExtractor.extract(eventClonedForMap),
+                        eventClonedForMap);
+                if (oldEvent != null) {
+                    oldEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(oldEvent);
+                }
+                if (lastTimestamp < currentTime) {
+                    if (scheduler != null) {
+                        notifyAt(currentTime + sessionGap);
+                        lastTimestamp = currentTime;
+                    }
+                }
+            }
+        }
+        if (streamEventChunk.getFirst() != null) {
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    /**
+     * Expires the events of the sessions that have not been active within the session gap, in front of the
+     * current event of the chunk.
+     */
+    private void closeSessions(ComplexEventChunk<StreamEvent> streamEventChunk, long currentTime) {
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (session.lastActivityTime + sessionGap > currentTime) {
+                return;
+            }
+            iterator.remove();
+            for (StreamEvent expiredEvent : session.events.values()) {
+                expiredEvent.setTimestamp(currentTime);
+                streamEventChunk.insertBeforeCurrent(expiredEvent);
+            }
+        }
+    }
+
+    @Override
+    public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator) {
+            return ((Operator) compiledCondition).find(matchingEvent, sessionEvents, streamEventCloner);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public CompiledCondition compileCondition(Expression expression,
+                                              MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                              SiddhiAppContext siddhiAppContext,
+                                              List<VariableExpressionExecutor> variableExpressionExecutors,
+                                              Map<String, Table> tableMap,
+                                              String queryName) {
+        return OperatorParser.constructOperator(sessionEvents, expression, matchingMetaInfoHolder, siddhiAppContext,
+                variableExpressionExecutors, tableMap, this.queryName);
+    }
+
+    private void notifyAt(long time) {
+        if (sharedExpiry != null) {
+            sharedExpiry.notifyAt(time);
+        } else {
+            scheduler.notifyAt(time);
+        }
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        if (sharedExpiry != null) {
+            sharedExpiry.cancel();
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> currentState() {
+        return singletonMap("sessions", sessions);
+    }
+
+    @Override
+    public synchronized void restoreState(Map<String, Object> map) {
+        sessions = (Map<Object, Session>) map.get("sessions");
+    }
+
+    /**
+     * Latest unique events of a session and the time the session was last active.
+     */
+    private static class Session implements Serializable {
+
+        private static final long serialVersionUID = 3387236810938372562L;
+
+        private final Map<Object, StreamEvent> events = new LinkedHashMap<Object, StreamEvent>();
+        private long lastActivityTime;
+    }
+
+    /**
+     * Read only view of the events of all open sessions, used to match joins and on-demand queries.
+     */
+    private class SessionEvents extends AbstractCollection<StreamEvent> {
+
+        @Override
+        public Iterator<StreamEvent> iterator() {
+            final Iterator<Session> sessionIterator = sessions.values().iterator();
+            return new Iterator<StreamEvent>() {
+                private Iterator<StreamEvent> eventIterator = Collections.<StreamEvent>emptyList().iterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!eventIterator.hasNext() && sessionIterator.hasNext()) {
+                        eventIterator = sessionIterator.next().events.values().iterator();
+                    }
+                    return eventIterator.hasNext();
+                }
+
+                @Override
+                public StreamEvent next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return eventIterator.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Session session : sessions.values()) {
+                size += session.events.size();
+            }
+            return size;
+        }
+    }
+}
@@ -20,34 +20,15 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
-import org.wso2.siddhi.core.event.ComplexEvent;
-import org.wso2.siddhi.core.event.ComplexEventChunk;
-import org.wso2.siddhi.core.event.state.StateEvent;
-import org.wso2.siddhi.core.event.stream.StreamEvent;
-import org.wso2.siddhi.core.event.stream.StreamEventCloner;
 import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
-import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
-import org.wso2.siddhi.core.query.processor.Processor;
 import org.wso2.siddhi.core.query.processor.SchedulingProcessor;
-import org.wso2.siddhi.core.query.processor.stream.window.FindableProcessor;
-import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
-import org.wso2.siddhi.core.table.Table;
-import org.wso2.siddhi.core.util.Scheduler;
-import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
-import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
-import org.wso2.siddhi.core.util.collection.operator.Operator;
 import org.wso2.siddhi.core.util.config.ConfigReader;
-import org.wso2.siddhi.core.util.parser.OperatorParser;
 import org.wso2.siddhi.query.api.definition.Attribute;
 import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
-import org.wso2.siddhi.query.api.expression.Expression;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * class representing unique time batch window processor implementation.
@@ -78,6 +59,18 @@ import java.util.Map;
                         optional = true,
                         defaultValue = "Timestamp of first event")
         },
+        systemParameter = {
+                @SystemParameter(name = "parallelFlushThreshold",
+                        description = "The minimum number of unique events in a batch for the batch to be"
+                                + " prepared for emission in parallel on the common fork join pool.",
+                        defaultValue = "100000",
+                        possibleParameters = "Any positive integer"),
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
         examples = {
                 @Example(
                         syntax = "define stream CseEventStream (symbol string, price float, volume int)\n\n" +
@@ -92,25 +85,17 @@ import java.util.Map;
         }
 )
 
-public class UniqueTimeBatchWindowProcessor extends WindowProcessor implements SchedulingProcessor, FindableProcessor {
-
-    private long timeInMilliSeconds;
-    private long nextEmitTime = -1;
-    private ComplexEventChunk<StreamEvent> currentEventChunk = new ComplexEventChunk<>(false);
-    private ComplexEventChunk<StreamEvent> eventsToBeExpired = null;
-    private Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
-    private StreamEvent resetEvent = null;
-    private Scheduler scheduler;
-    private SiddhiAppContext siddhiAppContext;
-    private boolean isStartTimeEnabled = false;
-    private long startTime = 0;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
+public class UniqueTimeBatchWindowProcessor extends AbstractUniqueBatchWindowProcessor
+        implements SchedulingProcessor {
 
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
-                        boolean b, SiddhiAppContext siddhiAppContext) {
+                        boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
         this.siddhiAppContext = siddhiAppContext;
-        this.eventsToBeExpired = new ComplexEventChunk<>(false);
+        planState(outputExpectsExpiredEvents);
+        initSharedExpiry(configReader);
+        this.parallelFlushThreshold = Integer.parseInt(configReader.readConfig("parallelFlushThreshold",
+                String.valueOf(DEFAULT_PARALLEL_FLUSH_THRESHOLD)));
         if (attributeExpressionExecutors.length == 2) {
             this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
             if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
@@ -177,167 +162,12 @@ public class UniqueTimeBatchWindowProcessor extends WindowProcessor implements S
     }
 
     @Override
-    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
-                           StreamEventCloner streamEventCloner) {
-        synchronized (this) {
-            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
-            if (nextEmitTime == -1) {
-                if (isStartTimeEnabled) {
-                    nextEmitTime = getNextEmitTime(currentTime);
-                } else {
-                    nextEmitTime = currentTime + timeInMilliSeconds;
-                }
-                if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
-                }
-            }
-            boolean sendEvents;
-            if (currentTime >= nextEmitTime) {
-                nextEmitTime += timeInMilliSeconds;
-
-                if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
-                }
-
-                sendEvents = true;
-            } else {
-                sendEvents = false;
-            }
-            while (streamEventChunk.hasNext()) {
-                StreamEvent streamEvent = streamEventChunk.next();
-                if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
-                    continue;
-                }
-                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                addUniqueEvent(uniqueEventMap, uniqueKeyExpressionExecutor, clonedStreamEvent);
-            }
-            streamEventChunk.clear();
-            if (sendEvents) {
-                for (StreamEvent event : uniqueEventMap.values()) {
-                    event.setTimestamp(currentTime);
-                    currentEventChunk.add(event);
-                }
-                uniqueEventMap.clear();
-                if (eventsToBeExpired.getFirst() != null) {
-                    while (eventsToBeExpired.hasNext()) {
-                        StreamEvent expiredEvent = eventsToBeExpired.next();
-                        expiredEvent.setTimestamp(currentTime);
-                    }
-                    streamEventChunk.add(eventsToBeExpired.getFirst());
-                }
-                eventsToBeExpired.clear();
-                if (currentEventChunk.getFirst() != null) {
-                    // add reset event in front of current events
-                    streamEventChunk.add(resetEvent);
-                    currentEventChunk.reset();
-                    while (currentEventChunk.hasNext()) {
-                        StreamEvent streamEvent = currentEventChunk.next();
-                        StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(streamEvent);
-                        eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
-                        this.eventsToBeExpired.add(eventClonedForMap);
-                    }
-                    if (currentEventChunk.getFirst() != null) {
-                        resetEvent = streamEventCloner.copyStreamEvent(currentEventChunk.getFirst());
-                        resetEvent.setType(ComplexEvent.Type.RESET);
-                        streamEventChunk.add(currentEventChunk.getFirst());
-                    }
-                }
-                currentEventChunk.clear();
-            }
-        }
-        if (streamEventChunk.getFirst() != null) {
-            streamEventChunk.setBatch(true);
-            nextProcessor.process(streamEventChunk);
-            streamEventChunk.setBatch(false);
-        }
-    }
-
-
-    @Override
-    public synchronized void setScheduler(Scheduler scheduler) {
-        this.scheduler = scheduler;
-    }
-
-    @Override
-    public synchronized Scheduler getScheduler() {
-        return scheduler;
-    }
-
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                  ExpressionExecutor uniqueKeyExpressionExecutor,
-                                  StreamEvent clonedStreamEvent) {
-        uniqueEventMap.put(uniqueKeyExpressionExecutor.execute(clonedStreamEvent), clonedStreamEvent);
-    }
-
-    /**
-     * returns the next emission time based on system clock round time values.
-     *
-     * @param currentTime the current time.
-     * @return next emit time
-     */
-    private long getNextEmitTime(long currentTime) {
-        long elapsedTimeSinceLastEmit = (currentTime - startTime) % timeInMilliSeconds;
-        return currentTime + (timeInMilliSeconds - elapsedTimeSinceLastEmit);
-    }
-
-    @Override
-    public void start() {
-        //Do nothing
-    }
-
-    @Override
-    public void stop() {
-        //Do nothing
-    }
-
-    @Override
-    public Map<String, Object> currentState() {
-        if (eventsToBeExpired != null) {
-            Map<String, Object> map = new HashMap<>();
-            map.put("currentEventChunk", currentEventChunk.getFirst());
-            map.put("eventsToBeExpired", eventsToBeExpired.getFirst());
-            map.put("resetEvent", resetEvent);
-            return map;
-        } else {
-            Map<String, Object> map = new HashMap<>();
-            map.put("currentEventChunk", currentEventChunk.getFirst());
-            map.put("resetEvent", resetEvent);
-            return map;
-        }
-    }
-
-    @Override
-    public void restoreState(Map<String, Object> map) {
-        if (map.size() > 2) {
-            currentEventChunk.clear();
-            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-            eventsToBeExpired.clear();
-            eventsToBeExpired.add((StreamEvent) map.get("eventsToBeExpired"));
-            resetEvent = (StreamEvent) map.get("resetEvent");
-        } else {
-            currentEventChunk.clear();
-            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-            resetEvent = (StreamEvent) map.get("resetEvent");
-        }
-    }
-
-    @Override
-    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, eventsToBeExpired, streamEventCloner);
-        } else {
-            return null;
-        }
+    protected ChunkAction onChunk(long currentTime) {
+        return isBatchTimeElapsed(currentTime) ? ChunkAction.ADD_THEN_FLUSH : ChunkAction.ADD;
     }
 
     @Override
-    public CompiledCondition compileCondition(Expression expression,
-                                              MatchingMetaInfoHolder matchingMetaInfoHolder,
-                                              SiddhiAppContext siddhiAppContext,
-                                              List<VariableExpressionExecutor> list, Map<String, Table> map,
-                                              String queryName) {
-        return OperatorParser
-                .constructOperator(eventsToBeExpired, expression, matchingMetaInfoHolder, siddhiAppContext, list, map,
-                        queryName);
+    protected boolean hasConcurrentIntake() {
+        return true;
     }
 }
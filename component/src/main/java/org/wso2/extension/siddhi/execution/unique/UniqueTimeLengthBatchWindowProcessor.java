@@ -20,33 +20,16 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
-import org.wso2.siddhi.core.event.ComplexEvent;
-import org.wso2.siddhi.core.event.ComplexEventChunk;
-import org.wso2.siddhi.core.event.state.StateEvent;
-import org.wso2.siddhi.core.event.stream.StreamEvent;
-import org.wso2.siddhi.core.event.stream.StreamEventCloner;
 import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
-import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
-import org.wso2.siddhi.core.query.processor.Processor;
 import org.wso2.siddhi.core.query.processor.SchedulingProcessor;
-import org.wso2.siddhi.core.query.processor.stream.window.FindableProcessor;
-import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
-import org.wso2.siddhi.core.table.Table;
-import org.wso2.siddhi.core.util.Scheduler;
-import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
-import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
-import org.wso2.siddhi.core.util.collection.operator.Operator;
 import org.wso2.siddhi.core.util.config.ConfigReader;
-import org.wso2.siddhi.core.util.parser.OperatorParser;
 import org.wso2.siddhi.query.api.definition.Attribute;
 import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
-import org.wso2.siddhi.query.api.expression.Expression;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -83,6 +66,28 @@ import java.util.Map;
                         description = "The number of events the window should tumble.",
                         type = {DataType.INT})
         },
+        systemParameter = {
+                @SystemParameter(name = "ringBufferSize",
+                        description = "The number of slots, a power of two, of a ring buffer that producers publish"
+                                + " their events into, to be added to the window by a single thread. Zero disables"
+                                + " the ring buffer.",
+                        defaultValue = "0",
+                        possibleParameters = "0, or any power of two"),
+                @SystemParameter(name = "ringBufferWaitStrategy",
+                        description = "How the thread adding the events waits for events to arrive in the ring.",
+                        defaultValue = "SLEEPING",
+                        possibleParameters = {"BUSY_SPIN", "YIELDING", "SLEEPING"}),
+                @SystemParameter(name = "ringBufferBackpressure",
+                        description = "Whether a producer waits for a free slot or drops its event when the ring"
+                                + " is full.",
+                        defaultValue = "BLOCK",
+                        possibleParameters = {"BLOCK", "DROP"}),
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
         examples = {
                 @Example(
                         syntax = "define stream CseEventStream (symbol string, price float, volume int)\n\n" +
@@ -97,28 +102,19 @@ import java.util.Map;
         }
 )
 
-public class UniqueTimeLengthBatchWindowProcessor extends WindowProcessor implements SchedulingProcessor,
-        FindableProcessor {
+public class UniqueTimeLengthBatchWindowProcessor extends AbstractUniqueBatchWindowProcessor
+        implements SchedulingProcessor {
 
-    private long timeInMilliSeconds;
     private long length;
-    private long nextEmitTime = -1;
-    private ComplexEventChunk<StreamEvent> currentEventChunk = new ComplexEventChunk<>(false);
-    private ComplexEventChunk<StreamEvent> eventsToBeExpired = null;
-    private Map<Object, StreamEvent> uniqueEventMap = new HashMap<>();
-    private StreamEvent resetEvent = null;
-    private Scheduler scheduler;
-    private SiddhiAppContext siddhiAppContext;
-    private boolean isStartTimeEnabled = false;
-    private long startTime = 0;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
     private boolean eventSent = false;
 
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
                         boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
         this.siddhiAppContext = siddhiAppContext;
-        this.eventsToBeExpired = new ComplexEventChunk<>(false);
+        planState(outputExpectsExpiredEvents);
+        initSharedExpiry(configReader);
+        initRingBufferIntake(configReader);
         if (attributeExpressionExecutors.length == 3) {
             this.uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
             if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
@@ -220,185 +216,41 @@ public class UniqueTimeLengthBatchWindowProcessor extends WindowProcessor implem
     }
 
     @Override
-    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
-                           StreamEventCloner streamEventCloner) {
-        synchronized (this) {
-            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
-            if (nextEmitTime == -1) {
-                if (isStartTimeEnabled) {
-                    nextEmitTime = getNextEmitTime(currentTime);
-                } else {
-                    nextEmitTime = currentTime + timeInMilliSeconds;
-                }
-                if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
-                }
-            }
-            boolean sendEventsByTime = false;
-            boolean sendEventsByLength = false;
-            if (currentTime >= nextEmitTime) {
-                nextEmitTime += timeInMilliSeconds;
-                if (scheduler != null) {
-                    scheduler.notifyAt(nextEmitTime);
-                }
-                if (eventSent) { // reset on next batch
-                    eventSent = false;
-                    streamEventChunk.clear();
-                    return;
-                }
-                sendEventsByTime = true;
-            }
-            if (eventSent) { //skip events till next batch
-                streamEventChunk.clear();
-                return;
-            }
-            while (streamEventChunk.hasNext()) {
-                StreamEvent streamEvent = streamEventChunk.next();
-                if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
-                    continue;
-                }
-                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                addUniqueEvent(uniqueEventMap, uniqueKeyExpressionExecutor, clonedStreamEvent);
-                if (uniqueEventMap.size() == length) {
-                    sendEventsByLength = true; // emitting batch based on length
-                    break;
-                }
-            }
-            streamEventChunk.clear();
-            if (sendEventsByTime || sendEventsByLength) {
-                sendEvents(streamEventChunk, streamEventCloner, currentTime);
-            }
-            if (sendEventsByLength) {
-                eventSent = true; // making events to skip till next time batch
-            }
-        }
-        if (streamEventChunk.getFirst() != null) {
-            streamEventChunk.setBatch(true);
-            nextProcessor.process(streamEventChunk);
-            streamEventChunk.setBatch(false);
-        }
-    }
-
-    private void sendEvents(ComplexEventChunk<StreamEvent> streamEventChunk, StreamEventCloner streamEventCloner,
-                            long currentTime) {
-        for (StreamEvent event : uniqueEventMap.values()) {
-            event.setTimestamp(currentTime);
-            currentEventChunk.add(event);
-        }
-        uniqueEventMap.clear();
-        if (eventsToBeExpired.getFirst() != null) {
-            while (eventsToBeExpired.hasNext()) {
-                StreamEvent expiredEvent = eventsToBeExpired.next();
-                expiredEvent.setTimestamp(currentTime);
-            }
-            streamEventChunk.add(eventsToBeExpired.getFirst());
-        }
-        eventsToBeExpired.clear();
-        if (currentEventChunk.getFirst() != null) {
-            // add reset event in front of current events
-            streamEventChunk.add(resetEvent);
-            currentEventChunk.reset();
-            while (currentEventChunk.hasNext()) {
-                StreamEvent streamEvent = currentEventChunk.next();
-                StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(streamEvent);
-                eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
-                this.eventsToBeExpired.add(eventClonedForMap);
-            }
-            if (currentEventChunk.getFirst() != null) {
-                resetEvent = streamEventCloner.copyStreamEvent(currentEventChunk.getFirst());
-                resetEvent.setType(ComplexEvent.Type.RESET);
-                streamEventChunk.add(currentEventChunk.getFirst());
+    protected ChunkAction onChunk(long currentTime) {
+        boolean timeElapsed = isBatchTimeElapsed(currentTime);
+        if (eventSent) {
+            // skip events till next batch, and reset on next batch
+            if (timeElapsed) {
+                eventSent = false;
             }
+            return ChunkAction.DISCARD;
         }
-        currentEventChunk.clear();
-    }
-
-
-    @Override
-    public synchronized void setScheduler(Scheduler scheduler) {
-        this.scheduler = scheduler;
-    }
-
-    @Override
-    public synchronized Scheduler getScheduler() {
-        return scheduler;
-    }
-
-    protected void addUniqueEvent(Map<Object, StreamEvent> uniqueEventMap,
-                                  ExpressionExecutor uniqueKeyExpressionExecutor,
-                                  StreamEvent clonedStreamEvent) {
-        uniqueEventMap.put(uniqueKeyExpressionExecutor.execute(clonedStreamEvent), clonedStreamEvent);
-    }
-
-    /**
-     * returns the next emission time based on system clock round time values.
-     *
-     * @param currentTime the current time.
-     * @return next emit time
-     */
-    private long getNextEmitTime(long currentTime) {
-        long elapsedTimeSinceLastEmit = (currentTime - startTime) % timeInMilliSeconds;
-        return currentTime + (timeInMilliSeconds - elapsedTimeSinceLastEmit);
+        return timeElapsed ? ChunkAction.ADD_THEN_FLUSH : ChunkAction.ADD;
     }
 
     @Override
-    public void start() {
-        //Do nothing
+    protected boolean isBatchFull(int size) {
+        return size == length;
     }
 
     @Override
-    public void stop() {
-        //Do nothing
+    protected boolean onBatchFull() {
+        eventSent = true; // making events to skip till next time batch
+        return false;
     }
 
     @Override
-    public Map<String, Object> currentState() {
-        if (eventsToBeExpired != null) {
-            Map<String, Object> map = new HashMap<>();
-            map.put("currentEventChunk", currentEventChunk.getFirst());
-            map.put("eventsToBeExpired", eventsToBeExpired.getFirst());
-            map.put("resetEvent", resetEvent);
-            return map;
-        } else {
-            Map<String, Object> map = new HashMap<>();
-            map.put("currentEventChunk", currentEventChunk.getFirst());
-            map.put("resetEvent", resetEvent);
-            return map;
-        }
+    public synchronized Map<String, Object> currentState() {
+        Map<String, Object> map = super.currentState();
+        map.put("eventSent", eventSent);
+        return map;
     }
 
     @Override
-    public void restoreState(Map<String, Object> map) {
-        if (map.size() > 2) {
-            currentEventChunk.clear();
-            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-            eventsToBeExpired.clear();
-            eventsToBeExpired.add((StreamEvent) map.get("eventsToBeExpired"));
-            resetEvent = (StreamEvent) map.get("resetEvent");
-        } else {
-            currentEventChunk.clear();
-            currentEventChunk.add((StreamEvent) map.get("currentEventChunk"));
-            resetEvent = (StreamEvent) map.get("resetEvent");
+    public synchronized void restoreState(Map<String, Object> map) {
+        super.restoreState(map);
+        if (map.get("eventSent") != null) {
+            eventSent = (Boolean) map.get("eventSent");
         }
     }
-
-    @Override
-    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, eventsToBeExpired, streamEventCloner);
-        } else {
-            return null;
-        }
-    }
-
-    @Override
-    public CompiledCondition compileCondition(Expression expression,
-                                              MatchingMetaInfoHolder matchingMetaInfoHolder,
-                                              SiddhiAppContext siddhiAppContext,
-                                              List<VariableExpressionExecutor> list, Map<String, Table> map,
-                                              String queryName) {
-        return OperatorParser
-                .constructOperator(eventsToBeExpired, expression, matchingMetaInfoHolder, siddhiAppContext, list, map,
-                        queryName);
-    }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.state.StateEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.SchedulingProcessor;
+import org.wso2.siddhi.core.query.processor.stream.window.FindableProcessor;
+import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
+import org.wso2.siddhi.core.table.Table;
+import org.wso2.siddhi.core.util.Scheduler;
+import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
+import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import org.wso2.siddhi.core.util.collection.operator.Operator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.siddhi.query.api.expression.Expression;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * The class representing unique time length window processor implementation.
+ */
+
+@Extension(
+        name = "timeLength",
+        namespace = "unique",
+        description = "This is a sliding time length window that holds the latest unique events"
+                + " that arrived during the previous time window, up to the given number of unique events."
+                + " The unique events are determined based on the value for a specified unique key parameter."
+                + " An event expires when the window time elapses after its arrival, or when it is the oldest"
+                + " event in a full window and a new unique event arrives, whichever happens first."
+                + " When a new event arrives with the same value for the unique key parameter as an existing"
+                + " event in the window, the existing event expires and it is replaced by the new event.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING}),
+                @Parameter(name = "window.time",
+                        description = "The sliding time period for which the window should hold events.",
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "window.length",
+                        description = "The maximum number of unique events the window should hold.",
+                        type = {DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream CseEventStream (symbol string, price float, volume int)\n" +
+                                "from CseEventStream#window.unique:timeLength(symbol, 1 sec, 100)\n" +
+                                "select symbol, price, volume\n" +
+                                "insert all events into OutputStream ;",
+
+                        description = "In this query, the window holds the latest unique events"
+                                + " that arrived within the last second from the 'CseEventStream', but never"
+                                + " more than 100 of them. Each event in the window has a unique value for the"
+                                + " 'symbol' attribute. All the events are returned to the 'OutputStream' stream"
+                                + " once they are added to the window or expire."
+                )
+        }
+)
+
+public class UniqueTimeLengthWindowProcessor extends WindowProcessor implements SchedulingProcessor,
+        FindableProcessor {
+
+    private long timeInMilliSeconds;
+    private int length;
+    private Scheduler scheduler;
+    private SharedExpiryService.Registration sharedExpiry;
+    private SiddhiAppContext siddhiAppContext;
+    private volatile long lastTimestamp = Long.MIN_VALUE;
+    private KeyExtractor uniqueKeyExtractor;
+    /**
+     * Events of the window in arrival order, so that the event to expire by time or by length is always the
+     * eldest one. A replaced key is removed and put again, moving it to the end.
+     */
+    private final LinkedHashMap<Object, StreamEvent> map = new LinkedHashMap<Object, StreamEvent>();
+
+    @Override
+    public synchronized Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public synchronized void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                        boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
+        sharedExpiry = SharedExpiryService.register(configReader, siddhiAppContext, this);
+        this.siddhiAppContext = siddhiAppContext;
+        if (attributeExpressionExecutors.length != 3) {
+            throw new SiddhiAppValidationException("UniqueTimeLength window should only have three parameters "
+                    + "(<string|int|bool|long|double|float> unique attribute, <int|long|time> windowTime, "
+                    + "<int> windowLength), but found " + attributeExpressionExecutors.length + " input attributes");
+        }
+        uniqueKeyExtractor = new KeyExtractor(attributeExpressionExecutors[0]);
+        if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
+            if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
+                timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                        .getValue();
+            } else if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.LONG) {
+                timeInMilliSeconds = (Long) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
+                        .getValue();
+            } else {
+                throw new SiddhiAppValidationException("UniqueTimeLength window's parameter time should be either"
+                        + " int or long, but found " + attributeExpressionExecutors[1].getReturnType());
+            }
+        } else {
+            throw new SiddhiAppValidationException("UniqueTimeLength window should have constant for time "
+                    + "parameter but found a dynamic attribute " + attributeExpressionExecutors[1].getClass()
+                    .getCanonicalName());
+        }
+        if (attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor
+                && attributeExpressionExecutors[2].getReturnType() == Attribute.Type.INT) {
+            length = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[2]).getValue();
+        } else {
+            throw new SiddhiAppValidationException("UniqueTimeLength window's parameter length should be a "
+                    + "constant int, but found " + attributeExpressionExecutors[2].getReturnType());
+        }
+        if (length <= 0) {
+            throw new SiddhiAppValidationException("UniqueTimeLength window's parameter length should be "
+                    + "positive, but found " + length);
+        }
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner) {
+        synchronized (this) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                Iterator<StreamEvent> iterator = map.values().iterator();
+                while (iterator.hasNext()) {
+                    StreamEvent expiredEvent = iterator.next();
+                    if (expiredEvent.getTimestamp() + timeInMilliSeconds > currentTime) {
+                        break;
+                    }
+                    iterator.remove();
+                    expiredEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(expiredEvent);
+                }
+                if (streamEvent.getType() != StreamEvent.Type.CURRENT) {
+                    streamEventChunk.remove();
+                    continue;
+                }
+                StreamEvent eventClonedForMap = streamEventCloner.copyStreamEvent(streamEvent);
+                eventClonedForMap.setType(StreamEvent.Type.EXPIRED);
+                Object key = uniqueKeyExtractor.extract(eventClonedForMap);
+                StreamEvent oldEvent = map.remove(key);
+                if (oldEvent == null && map.size() == length) {
+                    iterator = map.values().iterator();
+                    oldEvent = iterator.next();
+                    iterator.remove();
+                }
+                if (oldEvent != null) {
+                    oldEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(oldEvent);
+                }
+                map.put(key, eventClonedForMap);
+                if (lastTimestamp < eventClonedForMap.getTimestamp()) {
+                    if (scheduler != null) {
+                        notifyAt(eventClonedForMap.getTimestamp() + timeInMilliSeconds);
+                        lastTimestamp = eventClonedForMap.getTimestamp();
+                    }
+                }
+            }
+        }
+        if (streamEventChunk.getFirst() != null) {
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    @Override
+    public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof KeyLookup) {
+            KeyLookup keyLookup = (KeyLookup) compiledCondition;
+            return keyLookup.find(matchingEvent, map.get(keyLookup.key(matchingEvent)), streamEventCloner);
+        } else if (compiledCondition instanceof Operator) {
+            return ((Operator) compiledCondition).find(matchingEvent, map.values(), streamEventCloner);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public CompiledCondition compileCondition(Expression expression,
+                                              MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                              SiddhiAppContext siddhiAppContext,
+                                              List<VariableExpressionExecutor> variableExpressionExecutors,
+                                              Map<String, Table> tableMap,
+                                              String queryName) {
+        return KeyLookup.compile(new ExpressionExecutor[]{attributeExpressionExecutors[0]}, map.values(), expression,
+                matchingMetaInfoHolder, siddhiAppContext, variableExpressionExecutors, tableMap, this.queryName);
+    }
+
+    private void notifyAt(long time) {
+        if (sharedExpiry != null) {
+            sharedExpiry.notifyAt(time);
+        } else {
+            scheduler.notifyAt(time);
+        }
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        if (sharedExpiry != null) {
+            sharedExpiry.cancel();
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> currentState() {
+        return singletonMap("map", new LinkedHashMap<Object, StreamEvent>(map));
+    }
+
+    @Override
+    public synchronized void restoreState(Map<String, Object> state) {
+        // restored in place, as compiled conditions refer to the values of the map
+        map.clear();
+        map.putAll((Map<Object, StreamEvent>) state.get("map"));
+    }
+}
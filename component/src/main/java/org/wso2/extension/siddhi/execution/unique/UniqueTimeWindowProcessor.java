@@ -20,6 +20,7 @@ package org.wso2.extension.siddhi.execution.unique;
 import org.wso2.siddhi.annotation.Example;
 import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
 import org.wso2.siddhi.annotation.util.DataType;
 import org.wso2.siddhi.core.config.SiddhiAppContext;
 import org.wso2.siddhi.core.event.ComplexEventChunk;
@@ -44,6 +45,7 @@ import org.wso2.siddhi.query.api.definition.Attribute;
 import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
 import org.wso2.siddhi.query.api.expression.Expression;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +76,28 @@ import java.util.concurrent.ConcurrentMap;
                         description = "The sliding time period for which the window should hold events.",
                         type = {DataType.INT, DataType.LONG})
         },
+        systemParameter = {
+                @SystemParameter(name = "sharedExpiry",
+                        description = "Whether the window gets its timer events from the expiry service shared by"
+                                + " the unique windows, instead of from a scheduler of its own.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "columnarStore",
+                        description = "Whether the window keeps its events in a columnar store, holding each"
+                                + " attribute in an array of primitives or dictionary codes, and only creating the"
+                                + " events again when they expire or match a join.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"}),
+                @SystemParameter(name = "findSnapshot",
+                        description = "Whether joins search a copy of the events of the window, taken after the"
+                                + " window last changed, instead of holding the lock of the window while searching."
+                                + " The first search after each change copies every event of the window while"
+                                + " holding its lock, so this only pays off when joins search the window far more"
+                                + " often than it changes. Under continuous ingestion it costs more than searching"
+                                + " under the lock.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
         examples = {
                 @Example(
                         syntax = "define stream CseEventStream (symbol string, price float, volume int)\n" +
@@ -98,10 +122,24 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
     private long timeInMilliSeconds;
     private ComplexEventChunk<StreamEvent> expiredEventChunk;
     private Scheduler scheduler;
+    private SharedExpiryService.Registration sharedExpiry;
     private SiddhiAppContext siddhiAppContext;
     private volatile long lastTimestamp = Long.MIN_VALUE;
-    private ExpressionExecutor uniqueKeyExpressionExecutor;
-
+    private KeyExtractor uniqueKeyExtractor;
+    /**
+     * Events of the window when the columnar store is enabled, in arrival order, with the slot of each key by the
+     * dictionary encoded id of the key.
+     */
+    private ColumnarEventStore columnarStore;
+    private final KeyDictionary keyDictionary = new KeyDictionary(KeyDictionary.DEFAULT_MAX_IDLE_KEYS);
+    private int[] slotsByKeyId = new int[16];
+    private boolean findOnSnapshot;
+    private final FindSnapshot findSnapshot = new FindSnapshot(this) {
+        @Override
+        protected List<StreamEvent> copyEvents() {
+            return columnarStore != null ? columnarStore.toList() : FindSnapshot.copyOf(expiredEventChunk);
+        }
+    };
 
     @Override
     public synchronized Scheduler getScheduler() {
@@ -116,10 +154,11 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
     @Override
     protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
                         boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
+        sharedExpiry = SharedExpiryService.register(configReader, siddhiAppContext, this);
         this.siddhiAppContext = siddhiAppContext;
         this.expiredEventChunk = new ComplexEventChunk<StreamEvent>(false);
         if (attributeExpressionExecutors.length == 2) {
-            uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
+            uniqueKeyExtractor = new KeyExtractor(attributeExpressionExecutors[0]);
             if (attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor) {
                 if (attributeExpressionExecutors[1].getReturnType() == Attribute.Type.INT) {
                     timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1])
@@ -143,11 +182,19 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
                     + "(<string|int|bool|long|double|float> unique attribute, <int|long|time> windowTime), but found "
                     + attributeExpressionExecutors.length + " input attributes");
         }
+        if (Boolean.parseBoolean(configReader.readConfig("columnarStore", "false"))) {
+            columnarStore = new ColumnarEventStore(16);
+        }
+        findOnSnapshot = FindSnapshot.isEnabled(configReader);
     }
 
     @Override
     protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
                            StreamEventCloner streamEventCloner) {
+        if (columnarStore != null) {
+            processColumnar(streamEventChunk, nextProcessor);
+            return;
+        }
         synchronized (this) {
             while (streamEventChunk.hasNext()) {
                 StreamEvent streamEvent = streamEventChunk.next();
@@ -162,7 +209,7 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
                     this.expiredEventChunk.add(clonedEvent);
                     if (lastTimestamp < clonedEvent.getTimestamp()) {
                         if (scheduler != null) {
-                            scheduler.notifyAt(clonedEvent.getTimestamp() + timeInMilliSeconds);
+                            notifyAt(clonedEvent.getTimestamp() + timeInMilliSeconds);
                             lastTimestamp = clonedEvent.getTimestamp();
                         }
                     }
@@ -195,14 +242,76 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
                     streamEventChunk.remove();
                 }
             }
+            findSnapshot.invalidate();
         }
         nextProcessor.process(streamEventChunk);
     }
 
+    /**
+     * Keeps the events in the columnar store. Events expire from the eldest once the window time elapses after their
+     * arrival, or when a new event arrives with the same key.
+     */
+    private void processColumnar(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor) {
+        synchronized (this) {
+            while (streamEventChunk.hasNext()) {
+                StreamEvent streamEvent = streamEventChunk.next();
+                long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+                int firstSlot = columnarStore.first();
+                while (firstSlot != -1 && columnarStore.timestamp(firstSlot) + timeInMilliSeconds <= currentTime) {
+                    StreamEvent expiredEvent = columnarStore.materialize(firstSlot, StreamEvent.Type.EXPIRED);
+                    keyDictionary.release(columnarStore.keyId(firstSlot));
+                    columnarStore.remove(firstSlot);
+                    expiredEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(expiredEvent);
+                    firstSlot = columnarStore.first();
+                }
+                if (streamEvent.getType() != StreamEvent.Type.CURRENT) {
+                    streamEventChunk.remove();
+                    continue;
+                }
+                Object key = uniqueKeyExtractor.extract(streamEvent);
+                int keyId = keyDictionary.get(key);
+                if (keyId != KeyDictionary.NONE) {
+                    int oldSlot = slotsByKeyId[keyId];
+                    StreamEvent oldEvent = columnarStore.materialize(oldSlot, StreamEvent.Type.EXPIRED);
+                    keyDictionary.release(keyId);
+                    columnarStore.remove(oldSlot);
+                    oldEvent.setTimestamp(currentTime);
+                    streamEventChunk.insertBeforeCurrent(oldEvent);
+                }
+                addColumnar(key, streamEvent);
+                if (lastTimestamp < streamEvent.getTimestamp()) {
+                    if (scheduler != null) {
+                        notifyAt(streamEvent.getTimestamp() + timeInMilliSeconds);
+                        lastTimestamp = streamEvent.getTimestamp();
+                    }
+                }
+            }
+            findSnapshot.invalidate();
+        }
+        if (streamEventChunk.getFirst() != null) {
+            nextProcessor.process(streamEventChunk);
+        }
+    }
+
+    private void addColumnar(Object key, StreamEvent streamEvent) {
+        int keyId = keyDictionary.acquire(key);
+        if (keyId >= slotsByKeyId.length) {
+            slotsByKeyId = Arrays.copyOf(slotsByKeyId, keyDictionary.capacity());
+        }
+        slotsByKeyId[keyId] = columnarStore.add(streamEvent, keyId);
+    }
+
     @Override
-    public synchronized StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(matchingEvent, expiredEventChunk, streamEventCloner);
+    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator && findOnSnapshot) {
+            return ((Operator) compiledCondition).find(matchingEvent, findSnapshot.events(),
+                    FindSnapshot.MATCH_CLONER);
+        } else if (compiledCondition instanceof Operator) {
+            synchronized (this) {
+                return ((Operator) compiledCondition).find(matchingEvent,
+                        columnarStore != null ? columnarStore.view() : expiredEventChunk, streamEventCloner);
+            }
         } else {
             return null;
         }
@@ -215,10 +324,26 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
                                               List<VariableExpressionExecutor> variableExpressionExecutors,
                                               Map<String, Table> tableMap,
                                               String queryName) {
+        if (findOnSnapshot) {
+            return OperatorParser.constructOperator(findSnapshot.events(), expression, matchingMetaInfoHolder,
+                    siddhiAppContext, variableExpressionExecutors, tableMap, this.queryName);
+        }
+        if (columnarStore != null) {
+            return OperatorParser.constructOperator(columnarStore.view(), expression, matchingMetaInfoHolder,
+                    siddhiAppContext, variableExpressionExecutors, tableMap, this.queryName);
+        }
         return OperatorParser.constructOperator(expiredEventChunk, expression, matchingMetaInfoHolder, siddhiAppContext,
                 variableExpressionExecutors, tableMap, this.queryName);
     }
 
+    private void notifyAt(long time) {
+        if (sharedExpiry != null) {
+            sharedExpiry.notifyAt(time);
+        } else {
+            scheduler.notifyAt(time);
+        }
+    }
+
     @Override
     public void start() {
         //Do nothing
@@ -226,12 +351,20 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
 
     @Override
     public void stop() {
-        //Do nothing
+        if (sharedExpiry != null) {
+            sharedExpiry.cancel();
+        }
     }
 
     @Override
     public Map<String, Object> currentState() {
         Map<String, Object> map = new HashMap<>();
+        if (columnarStore != null) {
+            synchronized (this) {
+                map.put("events", columnarStore.toList());
+            }
+            return map;
+        }
         map.put("expiredEventchunck", expiredEventChunk.getFirst());
         map.put("map", this.map);
         return map;
@@ -239,9 +372,24 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
 
     @Override
     public void restoreState(Map<String, Object> map) {
-        expiredEventChunk.clear();
-        expiredEventChunk.add((StreamEvent) map.get("expiredEventchunck"));
-        this.map = (ConcurrentMap) map.get("map");
+        if (columnarStore != null) {
+            synchronized (this) {
+                findSnapshot.invalidate();
+                // restored in place, as compiled conditions refer to the view of the store
+                columnarStore.clear();
+                keyDictionary.clear();
+                for (StreamEvent streamEvent : (List<StreamEvent>) map.get("events")) {
+                    addColumnar(uniqueKeyExtractor.extract(streamEvent), streamEvent);
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            findSnapshot.invalidate();
+            expiredEventChunk.clear();
+            expiredEventChunk.add((StreamEvent) map.get("expiredEventchunck"));
+            this.map = (ConcurrentMap) map.get("map");
+        }
     }
 
     /**
@@ -251,7 +399,7 @@ public class UniqueTimeWindowProcessor extends WindowProcessor implements Schedu
      * @param event the stream event that need to be processed
      */
     private String generateKey(StreamEvent event) {
-        return uniqueKeyExpressionExecutor.execute(event).toString();
+        return uniqueKeyExtractor.extract(event).toString();
     }
 
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.SystemParameter;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.SiddhiAppContext;
+import org.wso2.siddhi.core.event.ComplexEventChunk;
+import org.wso2.siddhi.core.event.state.StateEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.event.stream.StreamEventCloner;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
+import org.wso2.siddhi.core.query.processor.Processor;
+import org.wso2.siddhi.core.query.processor.stream.window.FindableProcessor;
+import org.wso2.siddhi.core.query.processor.stream.window.WindowProcessor;
+import org.wso2.siddhi.core.table.Table;
+import org.wso2.siddhi.core.util.collection.operator.CompiledCondition;
+import org.wso2.siddhi.core.util.collection.operator.MatchingMetaInfoHolder;
+import org.wso2.siddhi.core.util.collection.operator.Operator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.core.util.parser.OperatorParser;
+import org.wso2.siddhi.query.api.definition.Attribute;
+import org.wso2.siddhi.query.api.exception.SiddhiAppValidationException;
+import org.wso2.siddhi.query.api.expression.Expression;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The class representing unique top k window processor implementation.
+ */
+
+@Extension(
+        name = "topK",
+        namespace = "unique",
+        description = "This is a window that holds the latest event of each of the most frequently recurring"
+                + " unique keys. The recurrence frequency of the keys is tracked with a Space-Saving summary"
+                + " of 'top.k' counters, hence any key that occurs in more than 1/top.k of the events is"
+                + " guaranteed to be held by the window. When a new event arrives with the same value for the"
+                + " unique key parameter as an existing event, the existing event expires and is replaced"
+                + " with the latest one. When a key that is not held arrives while the window is full,"
+                + " the event of the least frequent key expires to make room for it.",
+
+        parameters = {
+                @Parameter(name = "unique.key",
+                        description = "The attribute that should be checked for uniqueness.",
+                        type = {DataType.INT, DataType.LONG, DataType.FLOAT,
+                                DataType.BOOL, DataType.DOUBLE, DataType.STRING}),
+                @Parameter(name = "top.k",
+                        description = "The number of most frequently recurring keys that should be held.",
+                        type = {DataType.INT})
+        },
+        systemParameter = {
+                @SystemParameter(name = "findSnapshot",
+                        description = "Whether joins search a copy of the events of the window, taken after the"
+                                + " window last changed, instead of the events being replaced by the events in"
+                                + " process. The first search after each change copies every event of the window"
+                                + " while holding its lock, so this only pays off when joins search the window far"
+                                + " more often than it changes. Under continuous ingestion it costs more than"
+                                + " searching under the lock.",
+                        defaultValue = "false",
+                        possibleParameters = {"true", "false"})
+        },
+        examples = {
+                @Example(
+                        syntax = "define stream DeviceEvents (deviceId string, reading double) ;\n" +
+                                "from DeviceEvents#window.unique:topK(deviceId, 10)\n" +
+                                "select deviceId, reading \n" +
+                                "insert all events into ChattyDevices ;",
+
+                        description = "The window holds the latest event of each of the 10 devices that send"
+                                + " events most frequently. Events replaced by a newer event of the same device,"
+                                + " and events of devices that drop out of the top 10, are emitted as expired"
+                                + " events to the 'ChattyDevices' stream."
+                )
+        }
+)
+
+public class UniqueTopKWindowProcessor extends WindowProcessor implements FindableProcessor {
+    private ConcurrentMap<String, StreamEvent> map = new ConcurrentHashMap<String, StreamEvent>();
+    private SpaceSavingSummary summary;
+    private ExpressionExecutor uniqueKeyExpressionExecutor;
+    private boolean findOnSnapshot;
+    private final FindSnapshot findSnapshot = new FindSnapshot(this) {
+        @Override
+        protected List<StreamEvent> copyEvents() {
+            return FindSnapshot.copyOf(map.values());
+        }
+    };
+
+    @Override
+    protected void init(ExpressionExecutor[] attributeExpressionExecutors, ConfigReader configReader,
+                        boolean outputExpectsExpiredEvents, SiddhiAppContext siddhiAppContext) {
+        if (attributeExpressionExecutors.length != 2) {
+            throw new SiddhiAppValidationException("Unique TopK window should only have two parameters "
+                    + "(<string|int|bool|long|double|float> unique attribute, <int> top.k), but found "
+                    + attributeExpressionExecutors.length + " input attributes");
+        }
+        uniqueKeyExpressionExecutor = attributeExpressionExecutors[0];
+        if (!(attributeExpressionExecutors[1] instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppValidationException("Unique TopK window should have constant for top.k "
+                    + "parameter but found a dynamic attribute "
+                    + attributeExpressionExecutors[1].getClass().getCanonicalName());
+        }
+        if (attributeExpressionExecutors[1].getReturnType() != Attribute.Type.INT) {
+            throw new SiddhiAppValidationException("Unique TopK window's top.k parameter should be int, but found "
+                    + attributeExpressionExecutors[1].getReturnType());
+        }
+        int topK = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[1]).getValue();
+        if (topK <= 0) {
+            throw new SiddhiAppValidationException("Unique TopK window's top.k parameter should be greater "
+                    + "than zero, but found " + topK);
+        }
+        summary = new SpaceSavingSummary(topK);
+        findOnSnapshot = FindSnapshot.isEnabled(configReader);
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor nextProcessor,
+                           StreamEventCloner streamEventCloner) {
+        synchronized (this) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+
+            StreamEvent streamEvent = streamEventChunk.getFirst();
+            streamEventChunk.clear();
+            while (streamEvent != null) {
+                StreamEvent clonedEvent = streamEventCloner.copyStreamEvent(streamEvent);
+                clonedEvent.setType(StreamEvent.Type.EXPIRED);
+
+                String key = generateKey(clonedEvent);
+                Object evictedKey = summary.offer(key);
+                if (evictedKey != null) {
+                    StreamEvent evictedEvent = map.remove(evictedKey);
+                    if (evictedEvent != null) {
+                        evictedEvent.setTimestamp(currentTime);
+                        streamEventChunk.add(evictedEvent);
+                    }
+                }
+                StreamEvent oldEvent = map.put(key, clonedEvent);
+                if (oldEvent != null) {
+                    oldEvent.setTimestamp(currentTime);
+                    streamEventChunk.add(oldEvent);
+                }
+                StreamEvent next = streamEvent.getNext();
+                streamEvent.setNext(null);
+                streamEventChunk.add(streamEvent);
+                streamEvent = next;
+            }
+            findSnapshot.invalidate();
+        }
+        nextProcessor.process(streamEventChunk);
+    }
+
+    @Override
+    public void start() {
+        //Do nothing
+    }
+
+    @Override
+    public void stop() {
+        //Do nothing
+    }
+
+    @Override
+    public synchronized Map<String, Object> currentState() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("map", this.map);
+        state.put("summary", summary);
+        return state;
+    }
+
+    @Override
+    public synchronized void restoreState(Map<String, Object> state) {
+        findSnapshot.invalidate();
+        this.map = (ConcurrentMap<String, StreamEvent>) state.get("map");
+        this.summary = (SpaceSavingSummary) state.get("summary");
+    }
+
+    @Override
+    public StreamEvent find(StateEvent matchingEvent, CompiledCondition compiledCondition) {
+        if (compiledCondition instanceof Operator && findOnSnapshot) {
+            return ((Operator) compiledCondition).find(matchingEvent, findSnapshot.events(),
+                    FindSnapshot.MATCH_CLONER);
+        } else if (compiledCondition instanceof Operator) {
+            return ((Operator) compiledCondition).find(matchingEvent, map.values(), streamEventCloner);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public CompiledCondition compileCondition(Expression expression,
+                                              MatchingMetaInfoHolder matchingMetaInfoHolder,
+                                              SiddhiAppContext siddhiAppContext,
+                                              List<VariableExpressionExecutor> variableExpressionExecutors,
+                                              Map<String, Table> tableMap, String queryName) {
+        if (findOnSnapshot) {
+            return OperatorParser.constructOperator(findSnapshot.events(), expression, matchingMetaInfoHolder,
+                    siddhiAppContext, variableExpressionExecutors, tableMap, this.queryName);
+        }
+        return OperatorParser.constructOperator(map.values(), expression, matchingMetaInfoHolder, siddhiAppContext,
+                variableExpressionExecutors, tableMap, this.queryName);
+    }
+
+    private String generateKey(StreamEvent event) {
+        return String.valueOf(uniqueKeyExpressionExecutor.execute(event));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.siddhi.core.SiddhiAppRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.exception.SiddhiAppCreationException;
+import org.wso2.siddhi.core.query.output.callback.QueryCallback;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.util.EventPrinter;
+import org.wso2.siddhi.core.util.SiddhiTestHelper;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique distinct count stream processor test case.
+ */
+public class UniqueDistinctCountTestCase {
+    private static final Logger log = Logger.getLogger(UniqueDistinctCountTestCase.class);
+    private long lastDistinctCount;
+    private boolean eventArrived;
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+
+    @BeforeMethod
+    public void init() {
+        lastDistinctCount = 0;
+        eventArrived = false;
+        eventCount = new AtomicInteger(0);
+    }
+
+    @Test
+    public void uniqueDistinctCountTest1() throws InterruptedException {
+        log.info("UniqueDistinctCount test1");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream LoginEvents (timestamp long, ip string);";
+        String query = "@info(name = 'query1') from LoginEvents#unique:distinctCount(ip, 1 hour) "
+                + "select ip, distinctCount insert into UniqueIpCount ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        lastDistinctCount = (Long) event.getData(1);
+                        eventCount.incrementAndGet();
+                    }
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.3"});
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.3"});
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.4"});
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.3"});
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.5"});
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(eventCount.get(), 5);
+        Assert.assertEquals(lastDistinctCount, 3);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueDistinctCountTest2() throws InterruptedException {
+        log.info("UniqueDistinctCount test2 - values expire with the window");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream LoginEvents (timestamp long, ip string);";
+        String query = "@info(name = 'query1') from LoginEvents#unique:distinctCount(ip, 1 sec, 10) "
+                + "select ip, distinctCount insert into UniqueIpCount ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        lastDistinctCount = (Long) event.getData(1);
+                        eventCount.incrementAndGet();
+                    }
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.3"});
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.4"});
+        Thread.sleep(1500);
+        inputHandler.send(new Object[]{System.currentTimeMillis(), "192.10.1.5"});
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(lastDistinctCount, 1);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueDistinctCountTest3() {
+        log.info("Test for UniqueDistinctCount's parameter precision out of range");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream LoginEvents (timestamp long, ip string);";
+        String query = "@info(name = 'query1') from LoginEvents#unique:distinctCount(ip, 1 sec, 30) "
+                + "select ip, distinctCount insert into UniqueIpCount ;";
+        siddhiManager.createSiddhiAppRuntime(stream + query);
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueDistinctCountTest4() {
+        log.info("Test for UniqueDistinctCount's parameter time should be constant");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream LoginEvents (timestamp long, ip string);";
+        String query = "@info(name = 'query1') from LoginEvents#unique:distinctCount(ip, timestamp) "
+                + "select ip, distinctCount insert into UniqueIpCount ;";
+        siddhiManager.createSiddhiAppRuntime(stream + query);
+    }
+}
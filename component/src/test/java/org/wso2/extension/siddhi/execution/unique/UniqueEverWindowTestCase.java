@@ -31,9 +31,15 @@ import org.wso2.siddhi.core.query.output.callback.QueryCallback;
 import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.core.util.EventPrinter;
 import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
 import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import org.wso2.siddhi.core.util.persistence.PersistenceStore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -261,4 +267,193 @@ public class UniqueEverWindowTestCase {
             executionPlanRuntime.shutdown();
         }
     }
+
+    @Test
+    public void uniqueEverWindowTest5() throws InterruptedException {
+        log.info("uniqueEverWindowTest5 - attributes of a composite key are compared one by one");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream LoginEvents (timeStamp long, ip string, id string);";
+        String query = "@info(name = 'query1') from LoginEvents#window.unique:ever(ip, id) "
+                + "select timeStamp, ip, id insert all events into uniqueIps ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    eventCount.addAndGet(removeEvents.length);
+                    lastRemoveValue = ((Long) removeEvents[removeEvents.length - 1].getData(0)).intValue();
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { 1L, "192.10.1.3", "1" });
+        inputHandler.send(new Object[] { 2L, "192.10.1.31", "" });
+        inputHandler.send(new Object[] { 3L, "192.10.1.3", "1" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(4, eventCount.get());
+        AssertJUnit.assertEquals(1, lastRemoveValue);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueEverWindowTest6() throws InterruptedException {
+        log.info("uniqueEverWindowTest6 - a few keys recurring many times");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "@info(name = 'query1') from LoginEvents#window.unique:ever(ip) "
+                + "select timeStamp, ip insert all events into uniqueIps ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        final AtomicInteger removeEventCount = new AtomicInteger(0);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    removeEventCount.addAndGet(removeEvents.length);
+                    lastRemoveValue = ((Long) removeEvents[removeEvents.length - 1].getData(0)).intValue();
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (long i = 0; i < 1000; i++) {
+            inputHandler.send(new Object[] { i, "192.10.1." + (i % 10) });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 1000, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(1000, eventCount.get());
+        AssertJUnit.assertEquals(990, removeEventCount.get());
+        AssertJUnit.assertEquals(989, lastRemoveValue);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueEverWindowTest7() throws InterruptedException {
+        log.info("uniqueEverWindowTest7 - events of less recently updated keys spilled to disk");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.ever.hotKeys", "3");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String cseEventStream = "define stream LoginEvents (timeStamp long, ip string);";
+        String query = "@info(name = 'query1') from LoginEvents#window.unique:ever(ip) "
+                + "select timeStamp, ip insert all events into uniqueIps ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        final AtomicInteger removeEventCount = new AtomicInteger(0);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    for (Event removeEvent : removeEvents) {
+                        AssertJUnit.assertEquals("192.10.1." + ((Long) removeEvent.getData(0) % 10),
+                                removeEvent.getData(1));
+                    }
+                    removeEventCount.addAndGet(removeEvents.length);
+                    lastRemoveValue = ((Long) removeEvents[removeEvents.length - 1].getData(0)).intValue();
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        for (long i = 0; i < 1000; i++) {
+            inputHandler.send(new Object[] { i, "192.10.1." + (i % 10) });
+        }
+
+        SiddhiTestHelper.waitForEvents(waitTime, 1000, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(1000, eventCount.get());
+        AssertJUnit.assertEquals(990, removeEventCount.get());
+        AssertJUnit.assertEquals(989, lastRemoveValue);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueEverWindowTest8() throws InterruptedException {
+        log.info("uniqueEverWindowTest8 - on-demand queries fetching the latest event of a key");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setExtension("test:probe", ProbeFunctionExecutor.class);
+        String siddhiApp = "define stream StockStream (symbol string, price float, volume int); "
+                + "define window StockWindow (symbol string, price float, volume int) unique:ever(symbol); "
+                + "from StockStream insert into StockWindow ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(siddhiApp);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("StockStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"IBM", 75.6f, 100});
+        inputHandler.send(new Object[]{"WSO2", 57.6f, 10});
+        inputHandler.send(new Object[]{"IBM", 76.6f, 110});
+
+        Event[] events = siddhiAppRuntime.query("from StockWindow on symbol == 'IBM' select symbol, volume ");
+        AssertJUnit.assertEquals(1, events.length);
+        AssertJUnit.assertEquals("IBM", events[0].getData(0));
+        AssertJUnit.assertEquals(110, events[0].getData(1));
+        events = siddhiAppRuntime.query("from StockWindow on symbol == 'IBM' and volume < 110 "
+                + "select symbol, volume ");
+        AssertJUnit.assertTrue(events == null || events.length == 0);
+        events = siddhiAppRuntime.query("from StockWindow on symbol == 'ORCL' select symbol, volume ");
+        AssertJUnit.assertTrue(events == null || events.length == 0);
+        events = siddhiAppRuntime.query("from StockWindow on volume > 5 select symbol, volume ");
+        AssertJUnit.assertEquals(2, events.length);
+        ProbeFunctionExecutor.EVALUATIONS.set(0);
+        events = siddhiAppRuntime.query("from StockWindow on test:probe(volume) and symbol == 'IBM' "
+                + "select symbol, volume ");
+        AssertJUnit.assertEquals(1, events.length);
+        AssertJUnit.assertEquals(1, ProbeFunctionExecutor.EVALUATIONS.get());
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueEverWindowTest9() throws InterruptedException {
+        log.info("uniqueEverWindowTest9 - join on the key attribute looking up the latest event of a key");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setExtension("test:probe", ProbeFunctionExecutor.class);
+        String siddhiApp = "define stream StockStream (symbol string, price float, volume int); "
+                + "define stream CheckStream (company string); "
+                + "@info(name = 'query1') from CheckStream unidirectional join StockStream#window.unique:ever(symbol) "
+                + "on test:probe(StockStream.volume) and StockStream.symbol == CheckStream.company "
+                + "select CheckStream.company, StockStream.volume insert into OutputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(siddhiApp);
+        final List<Object> joinedVolumes = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        joinedVolumes.add(event.getData(1));
+                    }
+                }
+            }
+        });
+        InputHandler stockHandler = siddhiAppRuntime.getInputHandler("StockStream");
+        InputHandler checkHandler = siddhiAppRuntime.getInputHandler("CheckStream");
+        siddhiAppRuntime.start();
+        stockHandler.send(new Object[]{"IBM", 75.6f, 100});
+        stockHandler.send(new Object[]{"WSO2", 57.6f, 10});
+        stockHandler.send(new Object[]{"ORCL", 45.6f, 50});
+        stockHandler.send(new Object[]{"IBM", 76.6f, 110});
+        ProbeFunctionExecutor.EVALUATIONS.set(0);
+        checkHandler.send(new Object[]{"IBM"});
+        checkHandler.send(new Object[]{"WSO2"});
+        checkHandler.send(new Object[]{"MSFT"});
+
+        AssertJUnit.assertEquals(Arrays.<Object>asList(110, 10), joinedVolumes);
+        // a scan would evaluate the condition on all three events of the window for each of the three finds
+        AssertJUnit.assertEquals(2, ProbeFunctionExecutor.EVALUATIONS.get());
+        siddhiAppRuntime.shutdown();
+    }
 }
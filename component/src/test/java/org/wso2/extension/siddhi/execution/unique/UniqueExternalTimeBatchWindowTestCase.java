@@ -30,9 +30,15 @@ import org.wso2.siddhi.core.query.output.callback.QueryCallback;
 import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.core.util.EventPrinter;
 import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
 import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import org.wso2.siddhi.core.util.persistence.PersistenceStore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -1144,4 +1150,177 @@ public class UniqueExternalTimeBatchWindowTestCase {
         AssertJUnit.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test
+    public void uniqueExternalTimeBatchWindowTest25() throws InterruptedException {
+        log.info("uniqueExternalTimeBatchWindow test for out of order events within the allowed lateness");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String cseEventStream = "" + "define stream LoginEvents (timestamp long, ip string) ;";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:externalTimeBatch(ip, timestamp, 1 sec, 0, -1, false, 500) "
+                + "select timestamp, ip, count() as total  " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        eventCount.incrementAndGet();
+                        inEventCount++;
+                        if (inEventCount == 1) {
+                            AssertJUnit.assertEquals(1366335804950L, event.getData(0));
+                            AssertJUnit.assertEquals(2L, event.getData(2));
+                        } else if (inEventCount == 2) {
+                            AssertJUnit.assertEquals(1366335805400L, event.getData(0));
+                            AssertJUnit.assertEquals(2L, event.getData(2));
+                        }
+                    }
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                }
+                eventArrived = true;
+            }
+
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+
+        inputHandler.send(new Object[] { 1366335804100L, "192.10.1.3" });
+        inputHandler.send(new Object[] { 1366335805100L, "192.10.1.3" });
+        inputHandler.send(new Object[] { 1366335804500L, "192.10.1.3" });
+        inputHandler.send(new Object[] { 1366335805400L, "192.10.1.4" });
+        inputHandler.send(new Object[] { 1366335804950L, "192.10.1.4" });
+        inputHandler.send(new Object[] { 1366335805600L, "192.10.1.3" });
+        // belongs to the batch that has already been flushed, hence dropped
+        inputHandler.send(new Object[] { 1366335804700L, "192.10.1.5" });
+        inputHandler.send(new Object[] { 1366335806600L, "192.10.1.6" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(eventArrived, true, "Event arrived");
+        Assert.assertEquals(inEventCount, 2, "In Events ");
+        Assert.assertEquals(removeEventCount, 0, "Remove Events ");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueExternalTimeBatchWindowTest26() {
+        log.info("uniqueExternalTimeBatchWindowTest for seventh parameter invalid type ");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String cseEventStream = "" + "define stream LoginEvents (timestamp long, ip string) ;";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:externalTimeBatch(ip, timestamp, 1 sec, 0, 2 sec, false, '1 sec') "
+                + "select timestamp, ip, count() as total  " + "insert into uniqueIps ;";
+
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test
+    public void uniqueExternalTimeBatchWindowTest27() throws InterruptedException {
+        log.info("uniqueExternalTimeBatchWindow test for watermark progression on an idle source");
+
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String cseEventStream = "" + "define stream LoginEvents (timestamp long, ip string) ;";
+        String query = "" + "@info(name = 'query1') "
+                + "from LoginEvents#window.unique:externalTimeBatch(ip, timestamp, 1 sec, 0, 500, false, 0) "
+                + "select timestamp, ip, count() as total  " + "insert into uniqueIps ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        eventCount.incrementAndGet();
+                        inEventCount++;
+                        if (inEventCount == 1) {
+                            AssertJUnit.assertEquals(2L, event.getData(2));
+                        } else if (inEventCount == 2) {
+                            AssertJUnit.assertEquals(1366335805100L, event.getData(0));
+                            AssertJUnit.assertEquals(1L, event.getData(2));
+                        }
+                    }
+                }
+                eventArrived = true;
+            }
+
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+
+        inputHandler.send(new Object[] { 1366335804100L, "192.10.1.3" });
+        inputHandler.send(new Object[] { 1366335804300L, "192.10.1.4" });
+        inputHandler.send(new Object[] { 1366335805100L, "192.10.1.5" });
+        Thread.sleep(100);
+        Assert.assertEquals(inEventCount, 1, "In Events ");
+
+        // no further events arrive, hence the last batch is closed once the watermark passes its end
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        Assert.assertEquals(eventArrived, true, "Event arrived");
+        Assert.assertEquals(inEventCount, 2, "In Events ");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueExternalTimeBatchWindowTest28() throws InterruptedException {
+        log.info("uniqueExternalTimeBatchWindow test for joins searching a copy of the last flushed batch");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.externalTimeBatch.findSnapshot", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String streams = ""
+                + "define stream cseEventStream (timestamp long, symbol string, price float, volume int); "
+                + "define stream twitterStream (user string, tweet string, company string); ";
+        String query = "" + "@info(name = 'query1') from twitterStream unidirectional "
+                + "join cseEventStream#window.unique:externalTimeBatch(symbol, timestamp, 1 sec, 0) "
+                + "on cseEventStream.symbol == twitterStream.company "
+                + "select twitterStream.company as symbol, cseEventStream.price insert into outputStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        final List<Object> prices = new ArrayList<>();
+        try {
+            siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+                @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                    EventPrinter.print(timeStamp, inEvents, removeEvents);
+                    if (inEvents != null) {
+                        for (Event event : inEvents) {
+                            prices.add(event.getData(1));
+                        }
+                        eventCount.addAndGet(inEvents.length);
+                    }
+                    eventArrived = true;
+                }
+            });
+            InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+            InputHandler twitterStreamHandler = siddhiAppRuntime.getInputHandler("twitterStream");
+            siddhiAppRuntime.start();
+            cseEventStreamHandler.send(new Object[] { 1366335804341L, "WSO2", 55.6f, 100 });
+            cseEventStreamHandler.send(new Object[] { 1366335804341L, "IBM", 59.6f, 100 });
+            cseEventStreamHandler.send(new Object[] { 1366335804500L, "WSO2", 56.6f, 100 });
+            // flushes the first batch
+            cseEventStreamHandler.send(new Object[] { 1366335805341L, "ORCL", 40f, 100 });
+            twitterStreamHandler.send(new Object[] { "User1", "Hello World", "WSO2" });
+            twitterStreamHandler.send(new Object[] { "User2", "Hello World2", "IBM" });
+            // flushes the second batch, which only holds ORCL
+            cseEventStreamHandler.send(new Object[] { 1366335806400L, "WSO2", 75.6f, 100 });
+            twitterStreamHandler.send(new Object[] { "User3", "Hello World3", "WSO2" });
+            twitterStreamHandler.send(new Object[] { "User4", "Hello World4", "ORCL" });
+
+            SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+            Assert.assertEquals(prices, Arrays.<Object>asList(56.6f, 59.6f, 40f));
+            Assert.assertTrue(eventArrived);
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
 }
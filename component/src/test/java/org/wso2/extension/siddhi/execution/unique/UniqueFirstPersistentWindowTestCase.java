@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.AssertJUnit;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.siddhi.core.SiddhiAppRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
+import org.wso2.siddhi.core.exception.SiddhiAppCreationException;
+import org.wso2.siddhi.core.query.output.callback.QueryCallback;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+import org.wso2.siddhi.core.util.EventPrinter;
+import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
+import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique first persistent window test case.
+ */
+public class UniqueFirstPersistentWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueFirstPersistentWindowTestCase.class);
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private File directory;
+
+    @BeforeMethod
+    public void init() throws IOException {
+        eventCount = new AtomicInteger(0);
+        directory = Files.createTempDirectory("unique-first-persistent").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private SiddhiManager createSiddhiManager(File directory) {
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.firstPersistent.directory", directory.getPath());
+        masterConfigs.put("unique.firstPersistent.cacheSize", "2");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        return siddhiManager;
+    }
+
+    private SiddhiAppRuntime createSiddhiAppRuntime(File directory) {
+        return createSiddhiAppRuntime(createSiddhiManager(directory));
+    }
+
+    private SiddhiAppRuntime createSiddhiAppRuntime(SiddhiManager siddhiManager) {
+        String stream = "@app:name('Deduplication') define stream Deliveries (messageId string, attempt int);";
+        String query = "@info(name = 'query1') from Deliveries#window.unique:firstPersistent(messageId) "
+                + "select messageId, attempt insert into UniqueDeliveries ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                }
+            }
+        });
+        return siddhiAppRuntime;
+    }
+
+    @Test
+    public void firstPersistentUniqueWindowTest1() throws InterruptedException {
+        log.info("UniqueFirstPersistentWindow test1 - keys are remembered across restarts");
+        SiddhiAppRuntime siddhiAppRuntime = createSiddhiAppRuntime(directory);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("Deliveries");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"m1", 1});
+        inputHandler.send(new Object[]{"m2", 1});
+        inputHandler.send(new Object[]{"m1", 2});
+        inputHandler.send(new Object[]{"m3", 1});
+        inputHandler.send(new Object[]{"m2", 2});
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        AssertJUnit.assertEquals(3, eventCount.get());
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = createSiddhiAppRuntime(directory);
+        inputHandler = siddhiAppRuntime.getInputHandler("Deliveries");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"m3", 2});
+        inputHandler.send(new Object[]{"m1", 3});
+        inputHandler.send(new Object[]{"m4", 1});
+        inputHandler.send(new Object[]{"m4", 2});
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        AssertJUnit.assertEquals(4, eventCount.get());
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void firstPersistentUniqueWindowTest2() {
+        log.info("UniqueFirstPersistentWindow test2 - an unnamed query is rejected");
+        String stream = "@app:name('Deduplication') define stream Deliveries (messageId string, attempt int);";
+        String query = "from Deliveries#window.unique:firstPersistent(messageId) "
+                + "select messageId, attempt insert into UniqueDeliveries ;";
+        createSiddhiManager(directory).createSiddhiAppRuntime(stream + query);
+    }
+
+    @Test
+    public void firstPersistentUniqueWindowTest3() throws InterruptedException {
+        log.info("UniqueFirstPersistentWindow test3 - keys seen after the restored snapshot are forgotten");
+        SiddhiManager siddhiManager = createSiddhiManager(directory);
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+        SiddhiAppRuntime siddhiAppRuntime = createSiddhiAppRuntime(siddhiManager);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("Deliveries");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"m1", 1});
+        inputHandler.send(new Object[]{"m2", 1});
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        siddhiAppRuntime.persist();
+        inputHandler.send(new Object[]{"m3", 1});
+        inputHandler.send(new Object[]{"m4", 1});
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        AssertJUnit.assertEquals(4, eventCount.get());
+        siddhiAppRuntime.shutdown();
+
+        siddhiAppRuntime = createSiddhiAppRuntime(siddhiManager);
+        inputHandler = siddhiAppRuntime.getInputHandler("Deliveries");
+        siddhiAppRuntime.start();
+        try {
+            siddhiAppRuntime.restoreLastRevision();
+        } catch (CannotRestoreSiddhiAppStateException e) {
+            Assert.fail("Error in restoring last revision");
+        }
+        inputHandler.send(new Object[]{"m1", 2});
+        inputHandler.send(new Object[]{"m3", 2});
+        inputHandler.send(new Object[]{"m2", 2});
+        inputHandler.send(new Object[]{"m4", 2});
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        AssertJUnit.assertEquals(6, eventCount.get());
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void firstPersistentUniqueWindowTest4() throws InterruptedException {
+        log.info("UniqueFirstPersistentWindow test4 - the keys of each partition key are kept apart");
+        String app = "@app:name('PartitionedDeduplication') "
+                + "define stream Deliveries (tenant string, messageId string, attempt int);"
+                + "partition with (tenant of Deliveries) begin "
+                + "@info(name = 'query1') from Deliveries#window.unique:firstPersistent(messageId) "
+                + "select tenant, messageId, attempt insert into UniqueDeliveries ;"
+                + "end;";
+        SiddhiAppRuntime siddhiAppRuntime = createSiddhiManager(directory).createSiddhiAppRuntime(app);
+        siddhiAppRuntime.addCallback("UniqueDeliveries", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                EventPrinter.print(events);
+                eventCount.addAndGet(events.length);
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("Deliveries");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"t1", "m1", 1});
+        inputHandler.send(new Object[]{"t2", "m1", 1});
+        inputHandler.send(new Object[]{"t1", "m1", 2});
+        inputHandler.send(new Object[]{"t2", "m2", 1});
+        inputHandler.send(new Object[]{"t2", "m1", 2});
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Thread.sleep(100);
+        AssertJUnit.assertEquals(3, eventCount.get());
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void firstPersistentUniqueWindowTest5() {
+        log.info("UniqueFirstPersistentWindow test5 - an unnamed Siddhi app is rejected");
+        String stream = "define stream Deliveries (messageId string, attempt int);";
+        String query = "@info(name = 'query1') from Deliveries#window.unique:firstPersistent(messageId) "
+                + "select messageId, attempt insert into UniqueDeliveries ;";
+        createSiddhiManager(directory).createSiddhiAppRuntime(stream + query);
+    }
+}
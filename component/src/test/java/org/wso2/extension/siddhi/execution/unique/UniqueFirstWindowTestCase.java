@@ -257,4 +257,109 @@ public class UniqueFirstWindowTestCase {
         }
     }
 
+    @Test
+    public void firstUniqueWindowTest5() throws InterruptedException {
+        log.info("UniqueFirstWindow test5 - unique key made of two int attributes");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream SensorStream (building int, floor int, reading double);";
+        String query = "@info(name = 'query1') from SensorStream#window.unique:first(building, floor) "
+                + "select building, floor, reading insert into FirstReadings ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("SensorStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { 1, 2, 20.5 });
+        inputHandler.send(new Object[] { 2, 1, 21.5 });
+        inputHandler.send(new Object[] { 1, 2, 22.5 });
+        inputHandler.send(new Object[] { 12, 1, 23.5 });
+        inputHandler.send(new Object[] { 1, 21, 24.5 });
+        inputHandler.send(new Object[] { null, 2, 25.5 });
+        inputHandler.send(new Object[] { null, 2, 26.5 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(5, eventCount.get());
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void firstUniqueWindowTest6() throws InterruptedException {
+        log.info("UniqueFirstWindow test6 - repeated keys within a chunk");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream LoginEvents (ip string, attempt int);";
+        String query = "@info(name = 'query1') from LoginEvents#window.unique:first(ip) "
+                + "select ip, attempt insert into FirstLogins ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        AssertJUnit.assertTrue((Integer) event.getData(1) < 10);
+                    }
+                    eventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        Event[] events = new Event[1000];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new Event(System.currentTimeMillis(), new Object[] { "192.10.1." + (i % 10), i });
+        }
+        inputHandler.send(events);
+        inputHandler.send(events);
+
+        SiddhiTestHelper.waitForEvents(waitTime, 10, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(10, eventCount.get());
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void firstUniqueWindowTest7() throws InterruptedException {
+        log.info("UniqueFirstWindow test7 - keys are forgotten after the dedup horizon");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream LoginEvents (ip string, attempt int);";
+        String query = "@info(name = 'query1') from LoginEvents#window.unique:first(ip, 500) "
+                + "select ip, attempt insert into FirstLogins ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    eventCount.addAndGet(inEvents.length);
+                }
+                AssertJUnit.assertTrue(removeEvents == null);
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("LoginEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "192.10.1.3", 1 });
+        inputHandler.send(new Object[] { "192.10.1.3", 2 });
+        inputHandler.send(new Object[] { "192.10.1.4", 3 });
+        Thread.sleep(100);
+        inputHandler.send(new Object[] { "192.10.1.3", 4 });
+        SiddhiTestHelper.waitForEvents(waitTime, 2, eventCount, timeout);
+        AssertJUnit.assertEquals(2, eventCount.get());
+        Thread.sleep(1000);
+        inputHandler.send(new Object[] { "192.10.1.3", 5 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(3, eventCount.get());
+        siddhiAppRuntime.shutdown();
+    }
 }
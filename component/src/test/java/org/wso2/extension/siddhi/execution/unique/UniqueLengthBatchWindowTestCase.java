@@ -24,7 +24,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import org.wso2.siddhi.core.SiddhiAppRuntime;
 import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.debugger.SiddhiDebugger;
 import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
 import org.wso2.siddhi.core.exception.CannotRestoreSiddhiAppStateException;
 import org.wso2.siddhi.core.exception.SiddhiAppCreationException;
 import org.wso2.siddhi.core.query.output.callback.QueryCallback;
@@ -32,9 +34,15 @@ import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.core.stream.output.StreamCallback;
 import org.wso2.siddhi.core.util.EventPrinter;
 import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
 import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import org.wso2.siddhi.core.util.persistence.PersistenceStore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -511,4 +519,168 @@ public class UniqueLengthBatchWindowTestCase {
         AssertJUnit.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test public void uniqueLengthBatchWindowTest14() throws InterruptedException {
+        log.info("Testing length batch window with events added through a ring buffer");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.lengthBatch.ringBufferSize", "1024");
+        masterConfigs.put("unique.lengthBatch.ringBufferWaitStrategy", "yielding");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.unique:lengthBatch(symbol, 4) "
+                + "select symbol, price, volume " + "insert all events into outputStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                }
+                eventArrived = true;
+            }
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 61.5f, 2 });
+        inputHandler.send(new Object[] { "IBM", 701f, 3 });
+        inputHandler.send(new Object[] { "ORACLE", 60.5f, 4 });
+        inputHandler.send(new Object[] { "GOOG", 700f, 5 });
+        inputHandler.send(new Object[] { "MSFT", 60.5f, 6 });
+        inputHandler.send(new Object[] { "IBM", 60.5f, 7 });
+        inputHandler.send(new Object[] { "WSO2", 60.5f, 8 });
+        inputHandler.send(new Object[] { "ORACLE", 60.5f, 9 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 8, eventCount, timeout);
+        Assert.assertEquals(inEventCount, 8);
+        Assert.assertEquals(removeEventCount, 4);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueLengthBatchWindowTest15() throws InterruptedException {
+        log.info("UniqueLengthBatchWindow Test15 - only windows searched by a join keep expired copies of batches");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String streams = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define stream twitterStream (user string, tweet string, company string); ";
+        String query = "@info(name = 'query1') from cseEventStream#window.unique:lengthBatch(symbol,2) "
+                + "select symbol, price, volume insert into outputStream ;"
+                + "@info(name = 'query2') from twitterStream join cseEventStream#window.unique:lengthBatch(symbol,2) "
+                + "on cseEventStream.symbol == twitterStream.company "
+                + "select cseEventStream.symbol as symbol, twitterStream.tweet, cseEventStream.volume "
+                + "insert into joinStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        final List<Object> joinedVolumes = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query2", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        joinedVolumes.add(event.getData(2));
+                        eventCount.incrementAndGet();
+                    }
+                }
+                eventArrived = true;
+            }
+        });
+
+        InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        InputHandler twitterStreamHandler = siddhiAppRuntime.getInputHandler("twitterStream");
+        // debugging starts the Siddhi app, and exposes the state of the windows
+        SiddhiDebugger siddhiDebugger = siddhiAppRuntime.debug();
+        cseEventStreamHandler.send(new Object[] { "IBM", 10f, 1 });
+        cseEventStreamHandler.send(new Object[] { "WSO2", 20f, 2 });
+        twitterStreamHandler.send(new Object[] { "User1", "Hello World", "WSO2" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 1, eventCount, timeout);
+        Assert.assertEquals(joinedVolumes, Arrays.<Object>asList(2));
+        Assert.assertEquals(countExpiredCopies(siddhiDebugger, "query1"), 0);
+        Assert.assertEquals(countExpiredCopies(siddhiDebugger, "query2"), 2);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    /**
+     * @return the number of events the batch windows of a query keep as expired copies of their last batch
+     */
+    private int countExpiredCopies(SiddhiDebugger siddhiDebugger, String queryName) {
+        int expiredCopies = 0;
+        for (Object state : siddhiDebugger.getQueryState(queryName).values()) {
+            if (state instanceof Map && ((Map) state).get("eventsToBeExpired") != null) {
+                expiredCopies += ((StreamEvent[]) ((Map) state).get("eventsToBeExpired")).length;
+            }
+        }
+        return expiredCopies;
+    }
+
+    @Test public void uniqueLengthBatchWindowTest16() throws InterruptedException {
+        log.info("UniqueLengthBatchWindow Test16 - joining with a batch window inside a partition");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String streams = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define stream twitterStream (user string, tweet string, company string); ";
+        String partition = "partition with (symbol of cseEventStream, company of twitterStream) begin "
+                + "@info(name = 'query1') from twitterStream join cseEventStream#window.unique:lengthBatch(volume,2) "
+                + "on cseEventStream.symbol == twitterStream.company "
+                + "select cseEventStream.symbol as symbol, twitterStream.tweet, cseEventStream.volume "
+                + "insert into joinStream ;"
+                + "end;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + partition);
+        final List<Object> joinedSymbols = new ArrayList<>();
+        siddhiAppRuntime.addCallback("joinStream", new StreamCallback() {
+            @Override public void receive(Event[] events) {
+                EventPrinter.print(events);
+                for (Event event : events) {
+                    joinedSymbols.add(event.getData(0));
+                    eventCount.incrementAndGet();
+                }
+                eventArrived = true;
+            }
+        });
+
+        InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        InputHandler twitterStreamHandler = siddhiAppRuntime.getInputHandler("twitterStream");
+        siddhiAppRuntime.start();
+        cseEventStreamHandler.send(new Object[] { "IBM", 10f, 1 });
+        cseEventStreamHandler.send(new Object[] { "WSO2", 20f, 1 });
+        cseEventStreamHandler.send(new Object[] { "IBM", 30f, 2 });
+        cseEventStreamHandler.send(new Object[] { "WSO2", 40f, 2 });
+        twitterStreamHandler.send(new Object[] { "User1", "Hello World", "WSO2" });
+        twitterStreamHandler.send(new Object[] { "User2", "Hello World", "IBM" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, eventCount, timeout);
+        Assert.assertEquals(joinedSymbols, Arrays.<Object>asList("WSO2", "WSO2", "IBM", "IBM"));
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueLengthBatchWindowTest17() throws InterruptedException {
+        log.info("UniqueLengthBatchWindow Test17 - querying a named batch window that outputs current events only");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String app = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define window CseWindow (symbol string, price float, volume int) "
+                + "unique:lengthBatch(symbol,2) output current events; "
+                + "@info(name = 'query1') from cseEventStream insert into CseWindow ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(app);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 10f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 20f, 2 });
+
+        Event[] events = siddhiAppRuntime.query("from CseWindow on volume > 1 select symbol, volume ");
+        EventPrinter.print(events);
+        Assert.assertNotNull(events);
+        Assert.assertEquals(events.length, 1);
+        Assert.assertEquals(events[0].getData(0), "WSO2");
+        siddhiAppRuntime.shutdown();
+    }
 }
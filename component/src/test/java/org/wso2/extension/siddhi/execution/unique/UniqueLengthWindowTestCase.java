@@ -32,9 +32,15 @@ import org.wso2.siddhi.core.query.output.callback.QueryCallback;
 import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.core.util.EventPrinter;
 import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
 import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import org.wso2.siddhi.core.util.persistence.PersistenceStore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -251,4 +257,98 @@ public class UniqueLengthWindowTestCase {
         siddhiAppRuntime.shutdown();
     }
 
+    @Test
+    public void uniqueLengthWindowTest7() throws InterruptedException {
+        log.info("Testing uniqueLength window kept in the columnar store");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.length.columnarStore", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume long);";
+        String query = "@info(name = 'query1') from cseEventStream#window.unique:length(symbol, 2) "
+                + "select symbol, price, volume insert all events into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        final AtomicInteger inEventCount = new AtomicInteger(0);
+        final List<Object> removedSymbols = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount.addAndGet(inEvents.length);
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        removedSymbols.add(event.getData(0));
+                        value = (Long) event.getData(2);
+                    }
+                    eventCount.addAndGet(removeEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 1L });
+        inputHandler.send(new Object[] { "WSO2", 60.5f, 2L });
+        inputHandler.send(new Object[] { "IBM", 701f, 3L });
+        inputHandler.send(new Object[] { "ORCL", 50f, 4L });
+        inputHandler.send(new Object[] { "WSO2", 61.5f, 5L });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 8, eventCount, timeout);
+        AssertJUnit.assertTrue(eventArrived);
+        AssertJUnit.assertEquals(5, inEventCount.get());
+        AssertJUnit.assertEquals(Arrays.asList("IBM", "WSO2", "IBM"), removedSymbols);
+        AssertJUnit.assertEquals(3L, value);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueLengthWindowTest8() throws InterruptedException {
+        log.info("Testing uniqueLength window joined while searching a copy of its events");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.length.findSnapshot", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String streams = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define stream twitterStream (user string, tweet string, company string); ";
+        String query = "@info(name = 'query1') from twitterStream unidirectional "
+                + "join cseEventStream#window.unique:length(symbol, 2) "
+                + "on cseEventStream.symbol == twitterStream.company "
+                + "select twitterStream.company as symbol, cseEventStream.price insert into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        final List<Object> prices = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        prices.add(event.getData(1));
+                    }
+                    eventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+        InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        InputHandler twitterStreamHandler = siddhiAppRuntime.getInputHandler("twitterStream");
+        siddhiAppRuntime.start();
+        cseEventStreamHandler.send(new Object[] { "WSO2", 55.6f, 100 });
+        cseEventStreamHandler.send(new Object[] { "IBM", 59.6f, 100 });
+        twitterStreamHandler.send(new Object[] { "User1", "Hello World", "WSO2" });
+        cseEventStreamHandler.send(new Object[] { "WSO2", 75.6f, 100 });
+        twitterStreamHandler.send(new Object[] { "User2", "Hello World2", "WSO2" });
+        cseEventStreamHandler.send(new Object[] { "ORCL", 50f, 100 });
+        twitterStreamHandler.send(new Object[] { "User3", "Hello World3", "IBM" });
+        twitterStreamHandler.send(new Object[] { "User4", "Hello World4", "ORCL" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+        Assert.assertEquals(prices, Arrays.<Object>asList(55.6f, 75.6f, 50f));
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
 }
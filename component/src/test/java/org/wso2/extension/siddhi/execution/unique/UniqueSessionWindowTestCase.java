@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.siddhi.core.SiddhiAppRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.exception.SiddhiAppCreationException;
+import org.wso2.siddhi.core.query.output.callback.QueryCallback;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.util.EventPrinter;
+import org.wso2.siddhi.core.util.SiddhiTestHelper;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique session window test case.
+ */
+public class UniqueSessionWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueSessionWindowTestCase.class);
+    private int inEventCount;
+    private int removeEventCount;
+    private boolean eventArrived;
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+
+    @BeforeMethod
+    public void init() {
+        inEventCount = 0;
+        removeEventCount = 0;
+        eventArrived = false;
+        eventCount = new AtomicInteger(0);
+    }
+
+    @Test
+    public void uniqueSessionWindowTest1() throws InterruptedException {
+        log.info("UniqueSessionWindow test1 - repeated keys are replaced within a session");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream PageViews (user string, page string);";
+        String query = "@info(name = 'query1') from PageViews#window.unique:session(page, 1 sec, user) "
+                + "select user, page insert all events into UserPages ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                    eventCount.addAndGet(removeEvents.length);
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("PageViews");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"user1", "home"});
+        inputHandler.send(new Object[]{"user1", "cart"});
+        inputHandler.send(new Object[]{"user2", "home"});
+        inputHandler.send(new Object[]{"user1", "home"});
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(inEventCount, 4);
+        Assert.assertEquals(removeEventCount, 1);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueSessionWindowTest2() throws InterruptedException {
+        log.info("UniqueSessionWindow test2 - events expire when the session gap elapses");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream PageViews (user string, page string);";
+        String query = "@info(name = 'query1') from PageViews#window.unique:session(page, 500, user) "
+                + "select user, page insert all events into UserPages ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                    eventCount.addAndGet(removeEvents.length);
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("PageViews");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"user1", "home"});
+        inputHandler.send(new Object[]{"user1", "cart"});
+        Thread.sleep(300);
+        inputHandler.send(new Object[]{"user1", "checkout"});
+        Thread.sleep(300);
+        // the session of user1 is still active as the gap is counted from its last event
+        Assert.assertEquals(removeEventCount, 0);
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(inEventCount, 3);
+        Assert.assertEquals(removeEventCount, 3);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueSessionWindowTest3() {
+        log.info("Test for UniqueSessionWindow's parameter session gap should be constant");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream PageViews (user string, page string, gap long);";
+        String query = "@info(name = 'query1') from PageViews#window.unique:session(page, gap, user) "
+                + "select user, page insert all events into UserPages ;";
+        siddhiManager.createSiddhiAppRuntime(stream + query);
+    }
+}
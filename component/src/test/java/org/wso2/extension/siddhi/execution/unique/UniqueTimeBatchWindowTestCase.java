@@ -31,9 +31,12 @@ import org.wso2.siddhi.core.query.output.callback.QueryCallback;
 import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.core.util.EventPrinter;
 import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
 import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import org.wso2.siddhi.core.util.persistence.PersistenceStore;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -456,4 +459,131 @@ public class UniqueTimeBatchWindowTestCase {
         Assert.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test public void uniqueTimeWindowBatchTest15() throws InterruptedException {
+        log.info("UniqueTimeBatchWindow Test15 - batches are prepared in parallel");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.timeBatch.parallelFlushThreshold", "1");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.unique:timeBatch(symbol,1 sec) "
+                + "select symbol, price, volume " + "insert all events into outputStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    Assert.assertTrue(inEventCount > removeEventCount, "InEvents arrived before RemoveEvents");
+                    removeEventCount = removeEventCount + removeEvents.length;
+                    eventCount.addAndGet(removeEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        // all the events are sent in one chunk, so that they fall into one batch
+        Event[] events = new Event[20000];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new Event(System.currentTimeMillis(), new Object[] { "SYMBOL" + (i % 10000), 700f, i });
+        }
+        inputHandler.send(events);
+
+        SiddhiTestHelper.waitForEvents(waitTime, 20000, eventCount, timeout);
+        Assert.assertEquals(inEventCount, 10000);
+        Assert.assertEquals(removeEventCount, 10000);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowBatchTest16() throws InterruptedException {
+        log.info("UniqueTimeBatchWindow Test16 - events are accepted from concurrent producers");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.unique:timeBatch(symbol,100) "
+                + "select symbol, price, volume " + "insert into outputStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+
+        final InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        Thread[] producers = new Thread[4];
+        for (int i = 0; i < producers.length; i++) {
+            final int producer = i;
+            producers[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        for (int j = 0; j < 2500; j++) {
+                            inputHandler.send(new Object[] { "SYMBOL" + producer + "-" + j, 700f, j });
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        // every symbol is unique, so each event is emitted once whichever batch it falls into
+        SiddhiTestHelper.waitForEvents(waitTime, 10000, eventCount, timeout);
+        Assert.assertEquals(eventCount.get(), 10000);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowBatchTest17() throws InterruptedException {
+        log.info("UniqueTimeBatchWindow Test17 - the latest event of each key in a chunk is kept");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') " + "from cseEventStream#window.unique:timeBatch(symbol,1 sec) "
+                + "select symbol, price, volume " + "insert into outputStream ;";
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        Assert.assertTrue((Integer) event.getData(2) >= 990, "Only the latest event of a key is kept");
+                    }
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        Event[] events = new Event[1000];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new Event(System.currentTimeMillis(), new Object[] { "SYMBOL" + (i % 10), 700f, i });
+        }
+        inputHandler.send(events);
+
+        SiddhiTestHelper.waitForEvents(waitTime, 10, eventCount, timeout);
+        Assert.assertEquals(inEventCount, 10);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
 }
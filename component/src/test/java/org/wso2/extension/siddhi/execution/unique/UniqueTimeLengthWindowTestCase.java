@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.siddhi.core.SiddhiAppRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.exception.SiddhiAppCreationException;
+import org.wso2.siddhi.core.query.output.callback.QueryCallback;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.util.EventPrinter;
+import org.wso2.siddhi.core.util.SiddhiTestHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique time length window test case.
+ */
+public class UniqueTimeLengthWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueTimeLengthWindowTestCase.class);
+    private int inEventCount;
+    private int removeEventCount;
+    private boolean eventArrived;
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+
+    @BeforeMethod
+    public void init() {
+        inEventCount = 0;
+        removeEventCount = 0;
+        eventArrived = false;
+        eventCount = new AtomicInteger(0);
+    }
+
+    private QueryCallback countingCallback() {
+        return new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                    eventCount.addAndGet(removeEvents.length);
+                }
+                eventArrived = true;
+            }
+        };
+    }
+
+    @Test
+    public void uniqueTimeLengthWindowTest1() throws InterruptedException {
+        log.info("UniqueTimeLengthWindow test1 - events expire by length");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "@info(name = 'query1') from cseEventStream#window.unique:timeLength(symbol, 1 min, 2) "
+                + "select symbol, price, volume insert all events into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", countingCallback());
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"IBM", 700f, 1});
+        inputHandler.send(new Object[]{"WSO2", 60.5f, 2});
+        inputHandler.send(new Object[]{"IBM", 701f, 3});
+        inputHandler.send(new Object[]{"ORACLE", 50f, 4});
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(inEventCount, 4);
+        // IBM is replaced, then WSO2 is the eldest when the window is full
+        Assert.assertEquals(removeEventCount, 2);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueTimeLengthWindowTest2() throws InterruptedException {
+        log.info("UniqueTimeLengthWindow test2 - events expire by time");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "@info(name = 'query1') from cseEventStream#window.unique:timeLength(symbol, 500, 10) "
+                + "select symbol, price, volume insert all events into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", countingCallback());
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"IBM", 700f, 1});
+        inputHandler.send(new Object[]{"WSO2", 60.5f, 2});
+        inputHandler.send(new Object[]{"ORACLE", 50f, 3});
+
+        SiddhiTestHelper.waitForEvents(waitTime, 6, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(inEventCount, 3);
+        Assert.assertEquals(removeEventCount, 3);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTimeLengthWindowTest3() {
+        log.info("Test for UniqueTimeLengthWindow's parameter length should be int");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "@info(name = 'query1') from cseEventStream#window.unique:timeLength(symbol, 1 sec, 'ten') "
+                + "select symbol, price, volume insert all events into outputStream ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test
+    public void uniqueTimeLengthWindowTest4() throws InterruptedException {
+        log.info("UniqueTimeLengthWindow test4 - join on the key attribute looking up the latest event of a key");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setExtension("test:probe", ProbeFunctionExecutor.class);
+        String siddhiApp = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define stream checkStream (company string); "
+                + "@info(name = 'query1') from checkStream unidirectional "
+                + "join cseEventStream#window.unique:timeLength(symbol, 1 min, 10) "
+                + "on test:probe(volume) and symbol == company "
+                + "select company, volume insert into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(siddhiApp);
+        final List<Object> joinedVolumes = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        joinedVolumes.add(event.getData(1));
+                    }
+                }
+            }
+        });
+        InputHandler cseHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        InputHandler checkHandler = siddhiAppRuntime.getInputHandler("checkStream");
+        siddhiAppRuntime.start();
+        cseHandler.send(new Object[]{"IBM", 700f, 0});
+        cseHandler.send(new Object[]{"WSO2", 60.5f, 1});
+        cseHandler.send(new Object[]{"ORCL", 45.6f, 2});
+        cseHandler.send(new Object[]{"IBM", 701f, 3});
+        ProbeFunctionExecutor.EVALUATIONS.set(0);
+        checkHandler.send(new Object[]{"IBM"});
+        checkHandler.send(new Object[]{"WSO2"});
+        checkHandler.send(new Object[]{"MSFT"});
+
+        Assert.assertEquals(joinedVolumes, Arrays.<Object>asList(3, 1));
+        // a scan would evaluate the condition on all three events of the window for each of the three finds
+        Assert.assertEquals(ProbeFunctionExecutor.EVALUATIONS.get(), 2);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueTimeLengthWindowTest5() throws InterruptedException {
+        log.info("UniqueTimeLengthWindow test5 - on-demand queries fetching the latest event of a key");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setExtension("test:probe", ProbeFunctionExecutor.class);
+        String siddhiApp = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define window cseWindow (symbol string, price float, volume int) "
+                + "unique:timeLength(symbol, 1 min, 10); "
+                + "from cseEventStream insert into cseWindow ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(siddhiApp);
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"IBM", 700f, 0});
+        inputHandler.send(new Object[]{"WSO2", 60.5f, 1});
+        inputHandler.send(new Object[]{"IBM", 701f, 2});
+
+        ProbeFunctionExecutor.EVALUATIONS.set(0);
+        Event[] events = siddhiAppRuntime.query("from cseWindow on test:probe(volume) and symbol == 'IBM' "
+                + "select symbol, volume ");
+        Assert.assertEquals(events.length, 1);
+        Assert.assertEquals(events[0].getData(1), 2);
+        Assert.assertEquals(ProbeFunctionExecutor.EVALUATIONS.get(), 1);
+        events = siddhiAppRuntime.query("from cseWindow on test:probe(volume) and symbol == 'ORCL' "
+                + "select symbol, volume ");
+        Assert.assertTrue(events == null || events.length == 0);
+        Assert.assertEquals(ProbeFunctionExecutor.EVALUATIONS.get(), 1);
+        siddhiAppRuntime.shutdown();
+    }
+}
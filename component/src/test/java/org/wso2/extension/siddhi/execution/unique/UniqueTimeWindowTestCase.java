@@ -32,9 +32,14 @@ import org.wso2.siddhi.core.query.output.callback.QueryCallback;
 import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.core.util.EventPrinter;
 import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
 import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
 import org.wso2.siddhi.core.util.persistence.PersistenceStore;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -314,4 +319,254 @@ public class UniqueTimeWindowTestCase {
         AssertJUnit.assertTrue(eventArrived);
         siddhiAppRuntime.shutdown();
     }
+
+    @Test public void uniqueTimeWindowTest10() throws InterruptedException {
+        log.info("UniqueTimeWindow Test10 - events expire through the shared expiry service");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.time.sharedExpiry", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume int);";
+        String query =
+                "@info(name = 'query1') from cseEventStream#window.unique:time(symbol, 500) select symbol,price,"
+                        + "volume insert all events into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        final AtomicInteger allEventCount = new AtomicInteger(0);
+        final AtomicInteger removeEventCount = new AtomicInteger(0);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+
+                if (inEvents != null) {
+                    allEventCount.addAndGet(inEvents.length);
+                    inEventCount = inEventCount + inEvents.length;
+                }
+                if (removeEvents != null) {
+                    allEventCount.addAndGet(removeEvents.length);
+                    removeEventCount.addAndGet(removeEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 60.5f, 2 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 4, allEventCount, timeout);
+        Assert.assertEquals(inEventCount, 2);
+        Assert.assertEquals(removeEventCount.get(), 2);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest11() throws InterruptedException {
+        log.info("UniqueTimeWindow Test11 - joining with a window kept in the columnar store");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.time.columnarStore", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String streams = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define stream twitterStream (user string, tweet string, company string); ";
+        String query = "@info(name = 'query1') from cseEventStream#window.unique:time(symbol, 1 sec) "
+                + "join twitterStream#window.unique:ever(user) on cseEventStream.symbol == twitterStream.company "
+                + "select cseEventStream.symbol as symbol, twitterStream.tweet, cseEventStream.price "
+                + "insert into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        final AtomicInteger joinedEventCount = new AtomicInteger(0);
+        final List<Object> prices = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        prices.add(event.getData(2));
+                    }
+                    joinedEventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+        InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        InputHandler twitterStreamHandler = siddhiAppRuntime.getInputHandler("twitterStream");
+        siddhiAppRuntime.start();
+        cseEventStreamHandler.send(new Object[] { "WSO2", 55.6f, 100 });
+        cseEventStreamHandler.send(new Object[] { "IBM", 59.6f, 100 });
+        twitterStreamHandler.send(new Object[] { "User1", "Hello World", "WSO2" });
+        cseEventStreamHandler.send(new Object[] { "WSO2", 75.6f, 100 });
+        twitterStreamHandler.send(new Object[] { "User2", "Hello World2", "WSO2" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, joinedEventCount, timeout);
+        Assert.assertEquals(joinedEventCount.get(), 3);
+        Assert.assertEquals(prices.get(0), 55.6f);
+        Assert.assertEquals(prices.get(2), 75.6f);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest12() throws InterruptedException {
+        log.info("UniqueTimeWindow Test12 - joins searching a copy of the window events");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.time.findSnapshot", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String streams = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define stream twitterStream (user string, tweet string, company string); ";
+        String query = "@info(name = 'query1') from cseEventStream#window.unique:time(symbol, 1 sec) "
+                + "join twitterStream#window.unique:ever(user) on cseEventStream.symbol == twitterStream.company "
+                + "select cseEventStream.symbol as symbol, twitterStream.tweet, cseEventStream.price "
+                + "insert into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        final AtomicInteger joinedEventCount = new AtomicInteger(0);
+        final List<Object> prices = new ArrayList<>();
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        prices.add(event.getData(2));
+                    }
+                    joinedEventCount.addAndGet(inEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+        InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        InputHandler twitterStreamHandler = siddhiAppRuntime.getInputHandler("twitterStream");
+        siddhiAppRuntime.start();
+        cseEventStreamHandler.send(new Object[] { "WSO2", 55.6f, 100 });
+        cseEventStreamHandler.send(new Object[] { "IBM", 59.6f, 100 });
+        twitterStreamHandler.send(new Object[] { "User1", "Hello World", "WSO2" });
+        cseEventStreamHandler.send(new Object[] { "WSO2", 75.6f, 100 });
+        twitterStreamHandler.send(new Object[] { "User2", "Hello World2", "WSO2" });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 3, joinedEventCount, timeout);
+        Assert.assertEquals(joinedEventCount.get(), 3);
+        Assert.assertEquals(prices.get(0), 55.6f);
+        Assert.assertEquals(prices.get(2), 75.6f);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest13() throws InterruptedException {
+        log.info("UniqueTimeWindow Test13 - the shared expiry service outlives a Siddhi app that is shut down");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.time.sharedExpiry", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String cseEventStream = "define stream cseEventStream (symbol string, price float, volume int);";
+        String query =
+                "@info(name = 'query1') from cseEventStream#window.unique:time(symbol, 100) select symbol,price,"
+                        + "volume insert all events into outputStream ;";
+
+        SiddhiAppRuntime shutDownAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        shutDownAppRuntime.start();
+        InputHandler shutDownInputHandler = shutDownAppRuntime.getInputHandler("cseEventStream");
+        shutDownInputHandler.send(new Object[] { "IBM", 700f, 1 });
+        shutDownInputHandler.send(new Object[] { "WSO2", 60.5f, 2 });
+        shutDownAppRuntime.shutdown();
+        Thread.sleep(300);
+
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        final AtomicInteger removeEventCount = new AtomicInteger(0);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (removeEvents != null) {
+                    removeEventCount.addAndGet(removeEvents.length);
+                }
+                eventArrived = true;
+            }
+
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 1 });
+        inputHandler.send(new Object[] { "WSO2", 60.5f, 2 });
+
+        SiddhiTestHelper.waitForEvents(waitTime, 2, removeEventCount, timeout);
+        Assert.assertEquals(removeEventCount.get(), 2);
+        Assert.assertTrue(eventArrived);
+        siddhiAppRuntime.shutdown();
+        siddhiManager.shutdown();
+    }
+
+    @Test public void uniqueTimeWindowTest14() throws InterruptedException {
+        log.info("UniqueTimeWindow Test14 - joins searching a copy of the window events from several threads");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.time.findSnapshot", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String streams = "define stream cseEventStream (symbol string, price float, volume int); "
+                + "define stream twitterStream (user string, tweet string, company string); ";
+        String query = "@info(name = 'query1') from twitterStream "
+                + "join cseEventStream#window.unique:time(symbol, 1 min) "
+                + "on cseEventStream.symbol == twitterStream.company "
+                + "select twitterStream.company as company, cseEventStream.symbol as symbol, cseEventStream.price, "
+                + "cseEventStream.volume insert into outputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        final AtomicInteger joinedEventCount = new AtomicInteger(0);
+        final AtomicInteger inconsistentEventCount = new AtomicInteger(0);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        // every event of the window has its volume equal to its price
+                        if (!event.getData(0).equals(event.getData(1))
+                                || ((Float) event.getData(2)).intValue() != (Integer) event.getData(3)) {
+                            inconsistentEventCount.incrementAndGet();
+                        }
+                    }
+                    joinedEventCount.addAndGet(inEvents.length);
+                }
+            }
+
+        });
+        final InputHandler cseEventStreamHandler = siddhiAppRuntime.getInputHandler("cseEventStream");
+        final InputHandler twitterStreamHandler = siddhiAppRuntime.getInputHandler("twitterStream");
+        siddhiAppRuntime.start();
+        final int threadCount = 4;
+        final int eventsPerThread = 2000;
+        final AtomicInteger failedThreadCount = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final String symbol = "S" + t;
+            threads.add(new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        for (int i = 0; i < eventsPerThread; i++) {
+                            cseEventStreamHandler.send(new Object[] { symbol, (float) i, i });
+                        }
+                    } catch (InterruptedException | RuntimeException e) {
+                        failedThreadCount.incrementAndGet();
+                    }
+                }
+            }));
+            threads.add(new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        for (int i = 0; i < eventsPerThread; i++) {
+                            twitterStreamHandler.send(new Object[] { "User" + i, "Hello World", symbol });
+                        }
+                    } catch (InterruptedException | RuntimeException e) {
+                        failedThreadCount.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(failedThreadCount.get(), 0);
+        Assert.assertEquals(inconsistentEventCount.get(), 0);
+        Assert.assertTrue(joinedEventCount.get() > 0);
+        siddhiAppRuntime.shutdown();
+    }
 }
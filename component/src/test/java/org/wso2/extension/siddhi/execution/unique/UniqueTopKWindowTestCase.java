@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.extension.siddhi.execution.unique;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.siddhi.core.SiddhiAppRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.exception.SiddhiAppCreationException;
+import org.wso2.siddhi.core.query.output.callback.QueryCallback;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.util.EventPrinter;
+import org.wso2.siddhi.core.util.SiddhiTestHelper;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class representing unique top k window processor test case.
+ */
+public class UniqueTopKWindowTestCase {
+    private static final Logger log = Logger.getLogger(UniqueTopKWindowTestCase.class);
+    private int inEventCount;
+    private int removeEventCount;
+    private boolean eventArrived;
+    private int waitTime = 50;
+    private int timeout = 30000;
+    private AtomicInteger eventCount;
+    private List<Object> removedKeys;
+
+    @BeforeMethod
+    public void init() {
+        inEventCount = 0;
+        removeEventCount = 0;
+        eventArrived = false;
+        eventCount = new AtomicInteger(0);
+        removedKeys = new ArrayList<>();
+    }
+
+    @Test
+    public void uniqueTopKWindowTest1() throws InterruptedException {
+        log.info("UniqueTopKWindow test1 - replaced and evicted keys expire");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream DeviceEvents (deviceId string, reading int);";
+        String query = "@info(name = 'query1') from DeviceEvents#window.unique:topK(deviceId, 2) "
+                + "select deviceId, reading insert all events into OutputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+        siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    eventCount.addAndGet(inEvents.length);
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                    for (Event removeEvent : removeEvents) {
+                        removedKeys.add(removeEvent.getData(0));
+                    }
+                }
+                eventArrived = true;
+            }
+        });
+        InputHandler inputHandler = siddhiAppRuntime.getInputHandler("DeviceEvents");
+        siddhiAppRuntime.start();
+        inputHandler.send(new Object[]{"A", 1});
+        inputHandler.send(new Object[]{"A", 2});
+        inputHandler.send(new Object[]{"B", 3});
+        inputHandler.send(new Object[]{"A", 4});
+        inputHandler.send(new Object[]{"C", 5});
+
+        SiddhiTestHelper.waitForEvents(waitTime, 5, eventCount, timeout);
+        Assert.assertTrue(eventArrived);
+        Assert.assertEquals(inEventCount, 5);
+        Assert.assertEquals(removeEventCount, 3);
+        // B is the least frequent key when C arrives, hence it is evicted
+        Assert.assertEquals(removedKeys.get(2), "B");
+        siddhiAppRuntime.shutdown();
+    }
+
+    @Test
+    public void uniqueTopKWindowTest2() throws InterruptedException {
+        log.info("UniqueTopKWindow test2 - join with the most frequent keys");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String streams = "" +
+                "define stream DeviceEvents (deviceId string, reading int); " +
+                "define stream CheckStream (deviceId string); ";
+        String query = "" +
+                "@info(name = 'query1') " +
+                "from CheckStream join DeviceEvents#window.unique:topK(deviceId, 1) " +
+                "on CheckStream.deviceId == DeviceEvents.deviceId " +
+                "select DeviceEvents.deviceId, DeviceEvents.reading " +
+                "insert into OutputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        try {
+            siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+                @Override
+                public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                    EventPrinter.print(timeStamp, inEvents, removeEvents);
+                    if (inEvents != null) {
+                        for (Event inEvent : inEvents) {
+                            inEventCount++;
+                            eventCount.incrementAndGet();
+                            AssertJUnit.assertEquals("A", inEvent.getData(0));
+                            AssertJUnit.assertEquals(3, inEvent.getData(1));
+                        }
+                    }
+                    eventArrived = true;
+                }
+            });
+            InputHandler deviceEventsHandler = siddhiAppRuntime.getInputHandler("DeviceEvents");
+            InputHandler checkStreamHandler = siddhiAppRuntime.getInputHandler("CheckStream");
+            siddhiAppRuntime.start();
+            deviceEventsHandler.send(new Object[]{"A", 1});
+            deviceEventsHandler.send(new Object[]{"A", 2});
+            deviceEventsHandler.send(new Object[]{"A", 3});
+            checkStreamHandler.send(new Object[]{"A"});
+            checkStreamHandler.send(new Object[]{"B"});
+            SiddhiTestHelper.waitForEvents(waitTime, 1, eventCount, timeout);
+            Assert.assertEquals(inEventCount, 1);
+            Assert.assertTrue(eventArrived);
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTopKWindowTest3() {
+        log.info("Test for UniqueTopK window's parameter top.k invalid type");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream DeviceEvents (deviceId string, reading int);";
+        String query = "@info(name = 'query1') from DeviceEvents#window.unique:topK(deviceId, 2L) "
+                + "select deviceId, reading insert all events into OutputStream ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test(expectedExceptions = SiddhiAppCreationException.class)
+    public void uniqueTopKWindowTest4() {
+        log.info("Test for UniqueTopK window invalid number of parameters");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String cseEventStream = "define stream DeviceEvents (deviceId string, reading int);";
+        String query = "@info(name = 'query1') from DeviceEvents#window.unique:topK(deviceId) "
+                + "select deviceId, reading insert all events into OutputStream ;";
+        siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+    }
+
+    @Test
+    public void uniqueTopKWindowTest5() throws InterruptedException {
+        log.info("UniqueTopKWindow test5 - join searching a copy of the most frequent keys");
+        Map<String, String> masterConfigs = new HashMap<>();
+        masterConfigs.put("unique.topK.findSnapshot", "true");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(masterConfigs, null));
+        String streams = "" +
+                "define stream DeviceEvents (deviceId string, reading int); " +
+                "define stream CheckStream (deviceId string); ";
+        String query = "" +
+                "@info(name = 'query1') " +
+                "from CheckStream unidirectional join DeviceEvents#window.unique:topK(deviceId, 2) " +
+                "on CheckStream.deviceId == DeviceEvents.deviceId " +
+                "select DeviceEvents.deviceId, DeviceEvents.reading " +
+                "insert into OutputStream ;";
+        SiddhiAppRuntime siddhiAppRuntime = siddhiManager.createSiddhiAppRuntime(streams + query);
+        final List<Object> readings = new ArrayList<>();
+        try {
+            siddhiAppRuntime.addCallback("query1", new QueryCallback() {
+                @Override
+                public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                    EventPrinter.print(timeStamp, inEvents, removeEvents);
+                    if (inEvents != null) {
+                        for (Event inEvent : inEvents) {
+                            readings.add(inEvent.getData(1));
+                            eventCount.incrementAndGet();
+                        }
+                    }
+                    eventArrived = true;
+                }
+            });
+            InputHandler deviceEventsHandler = siddhiAppRuntime.getInputHandler("DeviceEvents");
+            InputHandler checkStreamHandler = siddhiAppRuntime.getInputHandler("CheckStream");
+            siddhiAppRuntime.start();
+            deviceEventsHandler.send(new Object[]{"A", 1});
+            deviceEventsHandler.send(new Object[]{"A", 2});
+            deviceEventsHandler.send(new Object[]{"A", 3});
+            deviceEventsHandler.send(new Object[]{"B", 4});
+            checkStreamHandler.send(new Object[]{"B"});
+            // C takes the counter of B, the least frequent key
+            deviceEventsHandler.send(new Object[]{"C", 5});
+            deviceEventsHandler.send(new Object[]{"C", 6});
+            checkStreamHandler.send(new Object[]{"A"});
+            checkStreamHandler.send(new Object[]{"B"});
+            checkStreamHandler.send(new Object[]{"C"});
+            SiddhiTestHelper.waitForEvents(waitTime, 3, eventCount, timeout);
+            Assert.assertEquals(readings, Arrays.<Object>asList(4, 3, 6));
+            Assert.assertTrue(eventArrived);
+        } finally {
+            siddhiAppRuntime.shutdown();
+        }
+    }
+}